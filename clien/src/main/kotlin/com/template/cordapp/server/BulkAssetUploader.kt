@@ -0,0 +1,225 @@
+package com.template.cordapp.server
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.template.cordapp.seller.flows.AssetIssueRequest
+import com.template.cordapp.seller.flows.AssetIssueResult
+import com.template.cordapp.seller.flows.CreateAssetStateFlow.BatchInitiator
+import net.corda.core.contracts.Amount
+import net.corda.core.utilities.getOrThrow
+import net.corda.finance.USD
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.io.*
+import java.math.BigDecimal
+import java.util.*
+import java.util.concurrent.LinkedBlockingQueue
+
+const val CSV_MEDIA_TYPE = "text/csv"
+const val NDJSON_MEDIA_TYPE = "application/x-ndjson"
+const val DEFAULT_UPLOAD_CONCURRENCY = 4
+const val MAX_UPLOAD_CONCURRENCY = 64
+const val UPLOAD_CHUNK_SIZE = BatchInitiator.DEFAULT_MAX_STATES_PER_TRANSACTION
+
+/**
+ * Creates invoices in bulk from a CSV or NDJSON upload. Rows are gathered into chunks of [UPLOAD_CHUNK_SIZE] and each
+ * chunk is issued by one [BatchInitiator] flow, which packs it into a transaction per notary.
+ *
+ * The upload is read a line at a time and at most `concurrency` chunks are in flight at once, so neither the upload
+ * nor the results are ever held in memory whole. The results of a chunk's rows are written as NDJSON lines as soon as
+ * its flow finishes, which is not necessarily in upload order, followed by a summary line once every row is done.
+ *
+ * CSV rows are `cusip,assetName,purchaseCost`, with an optional header row of those names and quotes around fields
+ * that contain commas. NDJSON rows are objects with the same three fields. Purchase costs are in dollars, as for the
+ * single-invoice form.
+ */
+@Component
+open class BulkAssetUploader(private val rpcConnection: NodeRPCConnection) {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(BulkAssetUploader::class.java)
+        private val HEADER = listOf("cusip", "assetName", "purchaseCost")
+        private const val CREATED = "CREATED"
+        private const val FAILED = "FAILED"
+
+        /** Validates the fields of row [number], trimming them, or throws [RowException] saying which is wrong. */
+        internal fun row(number: Int, cusip: String?, assetName: String?, purchaseCost: String?): Row {
+            if (cusip == null || cusip.isBlank()) throw RowException("Field 'cusip' must not be empty.")
+            if (assetName == null || assetName.isBlank()) throw RowException("Field 'assetName' must not be empty.")
+            val cost = try {
+                BigDecimal(purchaseCost?.trim() ?: "")
+            } catch (e: Exception) {
+                throw RowException("Field 'purchaseCost' must be a number.")
+            }
+            if (cost.signum() <= 0) throw RowException("Field 'purchaseCost' must be positive.")
+            return Row(number, cusip.trim(), assetName.trim(), Amount.fromDecimal(cost, USD))
+        }
+
+        /** Returns [row], recording its CUSIP in [seen], or throws [RowException] if an earlier row of the upload used it. */
+        internal fun firstUse(row: Row, seen: MutableSet<String>): Row {
+            if (!seen.add(row.cusip)) throw RowException("Duplicate CUSIP within the upload.")
+            return row
+        }
+
+        /** Splits one CSV line, honouring double-quoted fields and `""` escapes within them. */
+        internal fun splitCsv(line: String): List<String> {
+            val fields = ArrayList<String>()
+            val field = StringBuilder()
+            var quoted = false
+            var i = 0
+            while (i < line.length) {
+                val c = line[i]
+                when {
+                    quoted && c == '"' && i + 1 < line.length && line[i + 1] == '"' -> { field.append('"'); i++ }
+                    c == '"' -> quoted = !quoted
+                    !quoted && c == ',' -> { fields += field.toString(); field.setLength(0) }
+                    else -> field.append(c)
+                }
+                i++
+            }
+            require(!quoted) { "Unterminated quoted field." }
+            fields += field.toString()
+            return fields
+        }
+    }
+
+    private val mapper = ObjectMapper()
+
+    internal class Row(val number: Int, val cusip: String, val assetName: String, val purchaseCost: Amount<Currency>)
+
+    internal class RowException(message: String) : Exception(message)
+
+    /**
+     * Reads rows from [input] until it ends, creating an invoice for each, and writes the results to [output]. Results
+     * are written only from the calling thread, so a slow client holds up this upload but never the RPC client's
+     * threads. Stops submitting rows once [output] fails, which means the client has gone away.
+     */
+    fun upload(input: InputStream, ndjson: Boolean, concurrency: Int, output: OutputStream) {
+        require(concurrency in 1..MAX_UPLOAD_CONCURRENCY) { "Concurrency must be between 1 and $MAX_UPLOAD_CONCURRENCY." }
+        val writer = ResultWriter(output)
+        val finished = LinkedBlockingQueue<List<Map<String, Any?>>>()
+        var chunk = ArrayList<Row>(UPLOAD_CHUNK_SIZE)
+        var submitted = 0
+        var reported = 0
+        var rows = 0
+        // Each chunk is a batch of its own, so CUSIPs repeated across chunks are caught here rather than by the flow.
+        val cusips = HashSet<String>()
+
+        // Hands the chunk gathered so far to a batch flow, first waiting for a slot if `concurrency` are in flight.
+        fun submit() {
+            if (chunk.isEmpty()) return
+            val submitting = chunk
+            chunk = ArrayList(UPLOAD_CHUNK_SIZE)
+            while (submitted - reported >= concurrency) {
+                writer.writeAll(finished.take())
+                reported++
+            }
+            try {
+                val requests = submitting.map { AssetIssueRequest(it.cusip, it.assetName, it.purchaseCost) }
+                rpcConnection.proxy.startFlowDynamic(BatchInitiator::class.java, requests).returnValue.then {
+                    finished.put(try {
+                        submitting.zip(it.getOrThrow()) { row, result -> rowResult(row, result) }
+                    } catch (e: Exception) {
+                        submitting.map { row -> failed(row, e.message) }
+                    })
+                }
+                submitted++
+            } catch (e: Exception) {
+                writer.writeAll(submitting.map { row -> failed(row, e.message) })
+            }
+        }
+
+        BufferedReader(InputStreamReader(input, Charsets.UTF_8)).use { reader ->
+            var lineNumber = 0
+            while (!writer.broken) {
+                val line = reader.readLine() ?: break
+                lineNumber++
+                if (line.isBlank() || (lineNumber == 1 && !ndjson && isHeader(line))) continue
+                val number = ++rows
+                try {
+                    chunk.add(firstUse(if (ndjson) parseJson(number, line) else parseCsv(number, line), cusips))
+                } catch (e: RowException) {
+                    writer.write(mapOf("row" to number, "status" to FAILED, "error" to e.message))
+                    continue
+                }
+                if (chunk.size == UPLOAD_CHUNK_SIZE) submit()
+
+                // Report whatever has finished meanwhile, without waiting.
+                var results = finished.poll()
+                while (results != null) {
+                    writer.writeAll(results)
+                    reported++
+                    results = finished.poll()
+                }
+            }
+            if (!writer.broken) submit()
+        }
+
+        while (reported < submitted) {
+            writer.writeAll(finished.take())
+            reported++
+        }
+        if (writer.broken) {
+            logger.warn("Bulk upload client went away after {} rows ({} created, {} failed)", rows, writer.created, writer.failed)
+            return
+        }
+        writer.write(mapOf("summary" to true, "rows" to rows, "created" to writer.created, "failed" to writer.failed))
+    }
+
+    private fun rowResult(row: Row, result: AssetIssueResult): Map<String, Any?> = when (result.status) {
+        AssetIssueResult.Status.ISSUED -> mapOf("row" to row.number, "cusip" to row.cusip, "status" to CREATED, "txId" to result.txId.toString())
+        AssetIssueResult.Status.REJECTED -> failed(row, result.message)
+    }
+
+    private fun failed(row: Row, error: String?): Map<String, Any?> =
+            mapOf("row" to row.number, "cusip" to row.cusip, "status" to FAILED, "error" to error)
+
+    private fun isHeader(line: String) = splitCsv(line).map { it.trim() }.map { it.toLowerCase() } == HEADER.map { it.toLowerCase() }
+
+    private fun parseCsv(number: Int, line: String): Row {
+        val fields = try {
+            splitCsv(line)
+        } catch (e: IllegalArgumentException) {
+            throw RowException(e.message ?: "Malformed CSV.")
+        }
+        if (fields.size != HEADER.size) throw RowException("Expected ${HEADER.joinToString(",")} but found ${fields.size} fields.")
+        return row(number, fields[0], fields[1], fields[2])
+    }
+
+    private fun parseJson(number: Int, line: String): Row {
+        val node: JsonNode = try {
+            mapper.readTree(line)
+        } catch (e: IOException) {
+            throw RowException("Malformed JSON: ${e.message}")
+        }
+        if (!node.isObject) throw RowException("Expected a JSON object.")
+        return row(number, node.get("cusip")?.asText(), node.get("assetName")?.asText(), node.get("purchaseCost")?.asText())
+    }
+
+    /** Writes result lines, counts them, and notes when the client has gone away. */
+    private inner class ResultWriter(private val output: OutputStream) {
+        var broken = false
+            private set
+        var created = 0
+            private set
+        var failed = 0
+            private set
+
+        fun write(result: Map<String, Any?>) {
+            when (result["status"]) {
+                CREATED -> created++
+                FAILED -> failed++
+            }
+            if (broken) return
+            try {
+                output.write(mapper.writeValueAsBytes(result))
+                output.write('\n'.toInt())
+                output.flush()
+            } catch (e: IOException) {
+                broken = true
+            }
+        }
+
+        fun writeAll(results: List<Map<String, Any?>>) = results.forEach { write(it) }
+    }
+}
@@ -0,0 +1,266 @@
+package com.template.cordapp.server
+
+import net.corda.core.messaging.FlowHandle
+import net.corda.core.messaging.FlowProgressHandle
+import net.corda.core.utilities.getOrThrow
+import org.slf4j.LoggerFactory
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.stereotype.Component
+import org.springframework.web.context.request.async.DeferredResult
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import rx.Subscription
+import java.io.IOException
+import java.time.Duration
+import java.time.Instant
+import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.annotation.PreDestroy
+
+private const val MAX_TRACKED_FLOWS = 10_000
+private const val MAX_STEPS_PER_FLOW = 200
+// Every step a flow may report and its `done` event, so a stream's queue never overflows.
+private const val MAX_QUEUED_EVENTS = MAX_STEPS_PER_FLOW + 1
+private const val SENDER_THREADS = 4
+
+/**
+ * Tracks flows started over RPC so that the endpoints starting them can answer with a handle straight away, rather
+ * than park a servlet thread until the flow finishes.
+ *
+ * Each flow's outcome is a [CompletableFuture] completed from the RPC client's callback. It is polled through
+ * [status], or waited on without holding a thread through [result]. The steps a flow's progress tracker reports are
+ * kept with their times and streamed to [progress] subscribers; the progress feed is unsubscribed as soon as the flow
+ * finishes. Finished flows are forgotten oldest first once more than [MAX_TRACKED_FLOWS] are held; running flows are
+ * never forgotten, but do not keep finished flows behind them from being forgotten either.
+ */
+@Component
+open class FlowTracker {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(FlowTracker::class.java)
+    }
+
+    enum class Status { RUNNING, COMPLETED, FAILED }
+
+    /**
+     * What a client sees of a tracked flow.
+     *
+     * @property id The flow's run id, used as its handle in the API.
+     * @property flow The endpoint that started the flow.
+     * @property step The last step the flow's progress tracker reported, if any.
+     * @property result The success message, once [status] is [Status.COMPLETED].
+     * @property error The failure message, once [status] is [Status.FAILED].
+     */
+    data class FlowStatus(val id: String, val flow: String, val status: Status, val startedAt: Instant,
+                          val step: String?, val result: String?, val error: String?)
+
+    /**
+     * One progress tracker step, reached at [at]: [sinceStartMillis] after the flow started and [sincePreviousMillis]
+     * after the step before, which is how long that previous step took.
+     */
+    data class FlowStep(val step: String, val at: Instant, val sinceStartMillis: Long, val sincePreviousMillis: Long)
+
+    private inner class Submission(val id: String, val flow: String, val startedAt: Instant) {
+        val outcome = CompletableFuture<String>()
+        private val steps = ArrayList<FlowStep>()
+        private val streams = ArrayList<Stream>()
+        var progress: Subscription? = null
+
+        fun status(): FlowStatus {
+            val step = synchronized(this) { steps.lastOrNull()?.step }
+            if (!outcome.isDone) return FlowStatus(id, flow, Status.RUNNING, startedAt, step, null, null)
+            return try {
+                FlowStatus(id, flow, Status.COMPLETED, startedAt, step, outcome.join(), null)
+            } catch (e: Exception) {
+                FlowStatus(id, flow, Status.FAILED, startedAt, step, null, unwrap(e).message)
+            }
+        }
+
+        @Synchronized
+        fun step(label: String) {
+            if (outcome.isDone || steps.size >= MAX_STEPS_PER_FLOW) return
+            val now = Instant.now()
+            val previous = steps.lastOrNull()?.at ?: startedAt
+            val step = FlowStep(label, now, Duration.between(startedAt, now).toMillis(), Duration.between(previous, now).toMillis())
+            steps += step
+            streams.forEach { it.queue(SseEmitter.event().name("step").data(step)) }
+        }
+
+        /** Replays the steps so far to [emitter], then streams the rest; ends the stream once the flow has finished. */
+        @Synchronized
+        fun subscribe(emitter: SseEmitter) {
+            val stream = Stream(emitter)
+            steps.forEach { stream.queue(SseEmitter.event().name("step").data(it)) }
+            if (outcome.isDone) {
+                finish(stream)
+            } else {
+                streams += stream
+                // Called however the stream ends: finished, timed out or dropped by the browser.
+                emitter.onCompletion { synchronized(this) { streams.remove(stream) } }
+            }
+        }
+
+        /** Called once the flow has finished: stops listening to its progress and ends every stream. */
+        @Synchronized
+        fun finished() {
+            progress?.unsubscribe()
+            progress = null
+            streams.forEach { finish(it) }
+            streams.clear()
+        }
+
+        private fun finish(stream: Stream) {
+            stream.queue(SseEmitter.event().name("done").data(status()))
+            stream.end()
+        }
+    }
+
+    /**
+     * The events waiting to be written to one progress stream. Each stream is written by at most one [senders] thread
+     * at a time, so a browser that stops reading holds up its own stream and one of the [SENDER_THREADS] threads, until
+     * the container's write timeout gives up on it, while the other streams carry on. Flows only ever queue here, so
+     * they never wait on a browser, and neither do the RPC client's threads.
+     */
+    private inner class Stream(private val emitter: SseEmitter) {
+        private val events = ArrayBlockingQueue<SseEmitter.SseEventBuilder>(MAX_QUEUED_EVENTS)
+        private val draining = AtomicBoolean()
+        @Volatile private var ending = false
+        @Volatile private var ended = false
+
+        fun queue(event: SseEmitter.SseEventBuilder) {
+            events.add(event)
+            drain()
+        }
+
+        /** Ends the stream once every event queued so far has been written. */
+        fun end() {
+            ending = true
+            drain()
+        }
+
+        private fun drain() {
+            if (ended || !draining.compareAndSet(false, true)) return
+            senders.execute {
+                try {
+                    while (!ended) {
+                        val event = events.poll()
+                        if (event == null) {
+                            if (ending) {
+                                ended = true
+                                emitter.complete()
+                            }
+                            break
+                        }
+                        if (!send(emitter, event)) ended = true
+                    }
+                } finally {
+                    draining.set(false)
+                }
+                // Picks up anything queued after the last poll but before the stream stopped draining.
+                if (!ended && (events.isNotEmpty() || ending)) drain()
+            }
+        }
+    }
+
+    private val senders = Executors.newFixedThreadPool(SENDER_THREADS) { runnable ->
+        Thread(runnable, "flow-progress-sender").apply { isDaemon = true }
+    }
+
+    private val submissions = Collections.synchronizedMap(LinkedHashMap<String, Submission>())
+
+    /**
+     * Tracks the flow behind [handle], started by the endpoint [flow]. [describe] turns the flow's return value into
+     * the message reported once it completes. The handle, and with it any progress feed, is closed when the flow
+     * finishes.
+     */
+    fun <T> track(flow: String, handle: FlowHandle<T>, describe: (T) -> String): FlowStatus {
+        val submission = Submission(handle.id.uuid.toString(), flow, Instant.now())
+        synchronized(submissions) {
+            submissions[submission.id] = submission
+            // Forget the oldest finished flows, stepping over any that are still running however old they are.
+            val oldest = submissions.values.iterator()
+            while (submissions.size > MAX_TRACKED_FLOWS && oldest.hasNext()) {
+                if (oldest.next().outcome.isDone) oldest.remove()
+            }
+        }
+        if (handle is FlowProgressHandle<T>) {
+            synchronized(submission) {
+                submission.progress = handle.progress.subscribe({ submission.step(it) }, { error ->
+                    logger.debug("Progress of flow ${submission.id} stopped", error)
+                })
+            }
+        }
+        handle.returnValue.then {
+            try {
+                submission.outcome.complete(describe(it.getOrThrow()))
+            } catch (e: Throwable) {
+                logger.error(e.message, e)
+                submission.outcome.completeExceptionally(e)
+            } finally {
+                submission.finished()
+                handle.close()
+            }
+        }
+        return submission.status()
+    }
+
+    /**
+     * A server-sent event stream of flow [id]'s progress: a `step` event for every step so far and then for each new
+     * one, and a `done` event with the flow's final status, after which the stream ends. Returns null if the flow is
+     * not tracked.
+     */
+    fun progress(id: String): SseEmitter? {
+        val submission = submissions[id] ?: return null
+        val emitter = SseEmitter()
+        submission.subscribe(emitter)
+        return emitter
+    }
+
+    @PreDestroy
+    fun close() {
+        senders.shutdownNow()
+    }
+
+    /** The current status of flow [id], or null if it is not tracked. */
+    fun status(id: String): FlowStatus? = submissions[id]?.status()
+
+    /**
+     * Waits up to [timeoutMillis] for flow [id] without holding a servlet thread. A completed flow answers 200 with its
+     * message and a failed one 400 with its error, as the blocking endpoints used to. A flow still running when the
+     * wait times out answers 202 with its status. Returns null if the flow is not tracked.
+     */
+    fun result(id: String, timeoutMillis: Long): DeferredResult<ResponseEntity<*>>? {
+        val submission = submissions[id] ?: return null
+        val deferred = DeferredResult<ResponseEntity<*>>(timeoutMillis)
+        deferred.onTimeout { deferred.setResult(ResponseEntity.status(HttpStatus.ACCEPTED).body(submission.status())) }
+        submission.outcome.whenComplete { message, error ->
+            deferred.setResult(if (error == null) {
+                ResponseEntity.ok(message)
+            } else {
+                ResponseEntity.badRequest().body(unwrap(error).message ?: "Flow failed.")
+            })
+        }
+        return deferred
+    }
+}
+
+private fun unwrap(e: Throwable): Throwable = if (e is CompletionException) e.cause ?: e else e
+
+/** Writes [event] to [emitter], returning false if the stream can no longer be written to. */
+private fun send(emitter: SseEmitter, event: SseEmitter.SseEventBuilder): Boolean {
+    return try {
+        emitter.send(event)
+        true
+    } catch (e: IOException) {
+        // The browser has gone away.
+        emitter.completeWithError(e)
+        false
+    } catch (e: IllegalStateException) {
+        // The stream has already ended.
+        false
+    }
+}
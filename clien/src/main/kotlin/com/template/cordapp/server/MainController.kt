@@ -1,21 +1,27 @@
 package com.template.cordapp.server
 
+import com.template.cordapp.schema.AssetSchemaV2
+import com.template.cordapp.schema.AssetTransferSchemaV2
 import com.template.cordapp.state.Asset
 import com.template.cordapp.state.AssetTransfer
+import com.template.cordapp.state.RequestStatus
 import com.template.cordapp.seller.flows.CreateAssetStateFlow.Initiator
 import com.template.cordapp.seller.flows.CreateAssetTransferRequestInitiatorFlow
 import com.template.cordapp.buyer.flows.ConfirmAssetTransferRequestInitiatorFlow
 import com.template.cordapp.clearinghouse.flows.AssetSettlementInitiatorFlow
 import net.corda.core.utilities.OpaqueBytes
 import net.corda.core.contracts.UniqueIdentifier
-import net.corda.core.contracts.StateAndRef
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.messaging.startTrackedFlow
-import net.corda.core.messaging.vaultQueryBy
-import net.corda.core.utilities.getOrThrow
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.Builder.equal
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.QueryCriteria.VaultCustomQueryCriteria
+import net.corda.core.node.services.vault.SortAttribute
 import net.corda.finance.AMOUNT
 import net.corda.core.contracts.Amount
 import net.corda.finance.contracts.asset.Cash.State
+import net.corda.finance.schemas.CashSchemaV1
 import net.corda.core.identity.Party
 import net.corda.core.internal.declaredField
 import net.corda.core.serialization.serialize
@@ -23,10 +29,16 @@ import net.corda.finance.USD
 import net.corda.finance.flows.AbstractCashFlow
 import net.corda.finance.flows.CashIssueFlow
 import org.slf4j.LoggerFactory
+import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
 import org.springframework.http.MediaType.*
 import org.springframework.http.ResponseEntity
 import org.springframework.web.bind.annotation.*
+import org.springframework.web.context.request.async.DeferredResult
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody
+import java.net.URI
+import java.util.concurrent.TimeUnit
 import javax.servlet.http.HttpServletRequest
 
 val SERVICE_NAMES = listOf("Notary", "Network Map Service")
@@ -37,10 +49,20 @@ val SERVICE_NAMES = listOf("Notary", "Network Map Service")
 
 @RestController
 @RequestMapping("/api/example/") // The paths for GET and POST requests are relative to this base path.
-class MainController(rpc: NodeRPCConnection) {
+class MainController(rpc: NodeRPCConnection, private val flows: FlowTracker, private val uploader: BulkAssetUploader) {
 
     companion object {
         private val logger = LoggerFactory.getLogger(RestController::class.java)
+        private const val MAX_RESULT_WAIT_SECONDS = 300L
+
+        private val ASSET_SORT_FIELDS = mapOf(
+                "cusip" to SortAttribute.Custom(AssetSchemaV2.PersistentAsset::class.java, "cusip"),
+                "cost" to SortAttribute.Custom(AssetSchemaV2.PersistentAsset::class.java, "purchaseCostQuantity"))
+        private val TRANSFER_SORT_FIELDS = mapOf(
+                "cusip" to SortAttribute.Custom(AssetTransferSchemaV2.PersistentAssetTransfer::class.java, "cusip"),
+                "status" to SortAttribute.Custom(AssetTransferSchemaV2.PersistentAssetTransfer::class.java, "statusCode"))
+        private val CASH_SORT_FIELDS = mapOf(
+                "amount" to SortAttribute.Custom(CashSchemaV1.PersistentCashState::class.java, "pennies"))
     }
 
     private val myLegalName = rpc.proxy.nodeInfo().legalIdentities.first().name
@@ -66,40 +88,224 @@ class MainController(rpc: NodeRPCConnection) {
     }
 
     /**
-     * Displays all transactions that exist in the node's vault.
+     * Displays one page of the assets in the node's vault, optionally only those with [cusip] or owned by [owner].
+     *
+     * Pages are numbered from 1 and sorted by [sort] (`recorded`, `cusip` or `cost`, with an optional `,asc` or
+     * `,desc`). Pages sorted by recording time come with a `nextCursor`; pass it back as [cursor] to page through the
+     * vault without it shifting under concurrent updates. Responses carry an ETag for the page asked for, and a request
+     * whose If-None-Match still matches gets a 304 without the page being read.
      */
     @GetMapping(value = [ "transactions" ], produces = [APPLICATION_JSON_VALUE])
-    fun getTransactions() : ResponseEntity<List<StateAndRef<Asset>>> {
-        return ResponseEntity.ok(proxy.vaultQueryBy<Asset>().states)
+    fun getTransactions(@RequestParam(value = "page", defaultValue = "1") page: Int,
+                        @RequestParam(value = "size", defaultValue = "$DEFAULT_API_PAGE_SIZE") size: Int,
+                        @RequestParam(value = "sort", required = false) sort: String?,
+                        @RequestParam(value = "cursor", required = false) cursor: String?,
+                        @RequestParam(value = "cusip", required = false) cusip: String?,
+                        @RequestParam(value = "owner", required = false) owner: String?,
+                        request: HttpServletRequest) : ResponseEntity<*> {
+        return queryPage(request) {
+            val filter = assetFilter(cusip, owner)
+            proxy.vaultVersion<Asset>(filter, page, size, sort, cursor) to { proxy.vaultPage<Asset>(filter(Vault.StateStatus.UNCONSUMED), page, size, sort, cursor, ASSET_SORT_FIELDS) }
+        }
+    }
+
+    /**
+     * Returns the assets produced and consumed since the change cursor [since], filtered as for [getTransactions], and
+     * the cursor to pass next time. Without [since] the feed starts from the beginning of the vault.
+     */
+    @GetMapping(value = [ "transactions/changes" ], produces = [APPLICATION_JSON_VALUE])
+    fun getTransactionChanges(@RequestParam(value = "since", required = false) since: String?,
+                              @RequestParam(value = "size", defaultValue = "$DEFAULT_API_PAGE_SIZE") size: Int,
+                              @RequestParam(value = "cusip", required = false) cusip: String?,
+                              @RequestParam(value = "owner", required = false) owner: String?) : ResponseEntity<*> {
+        return queryChanges { proxy.vaultChanges<Asset>(assetFilter(cusip, owner), since, size) }
     }
 
     /**
-     * Displays all transfers that exist in the node's vault.
+     * Displays one page of the transfers in the node's vault, optionally only those in [status], for [cusip], or with
+     * [counterparty] as seller, buyer or clearing house. Paging, sorting (`recorded`, `cusip` or `status`) and ETags
+     * work as for [getTransactions].
      */
 
     @GetMapping(value = [ "transfers" ], produces = [APPLICATION_JSON_VALUE])
-    fun getTransfers() : ResponseEntity<List<StateAndRef<AssetTransfer>>> {
-        return ResponseEntity.ok(proxy.vaultQueryBy<AssetTransfer>().states)
+    fun getTransfers(@RequestParam(value = "page", defaultValue = "1") page: Int,
+                     @RequestParam(value = "size", defaultValue = "$DEFAULT_API_PAGE_SIZE") size: Int,
+                     @RequestParam(value = "sort", required = false) sort: String?,
+                     @RequestParam(value = "cursor", required = false) cursor: String?,
+                     @RequestParam(value = "status", required = false) status: String?,
+                     @RequestParam(value = "cusip", required = false) cusip: String?,
+                     @RequestParam(value = "counterparty", required = false) counterparty: String?,
+                     request: HttpServletRequest) : ResponseEntity<*> {
+        return queryPage(request) {
+            val filter = transferFilter(status, cusip, counterparty)
+            proxy.vaultVersion<AssetTransfer>(filter, page, size, sort, cursor) to { proxy.vaultPage<AssetTransfer>(filter(Vault.StateStatus.UNCONSUMED), page, size, sort, cursor, TRANSFER_SORT_FIELDS) }
+        }
     }
 
     /**
-     * Displays cash statements that belong to node
+     * Returns the transfers produced and consumed since the change cursor [since], filtered as for [getTransfers]. See
+     * [getTransactionChanges].
+     */
+    @GetMapping(value = [ "transfers/changes" ], produces = [APPLICATION_JSON_VALUE])
+    fun getTransferChanges(@RequestParam(value = "since", required = false) since: String?,
+                           @RequestParam(value = "size", defaultValue = "$DEFAULT_API_PAGE_SIZE") size: Int,
+                           @RequestParam(value = "status", required = false) status: String?,
+                           @RequestParam(value = "cusip", required = false) cusip: String?,
+                           @RequestParam(value = "counterparty", required = false) counterparty: String?) : ResponseEntity<*> {
+        return queryChanges { proxy.vaultChanges<AssetTransfer>(transferFilter(status, cusip, counterparty), since, size) }
+    }
+
+    /**
+     * Displays one page of the cash states that belong to the node, optionally only those owned by [owner]. Paging,
+     * sorting (`recorded` or `amount`) and ETags work as for [getTransactions].
      */
 
     @GetMapping(value = [ "cash" ], produces = [APPLICATION_JSON_VALUE])
-    fun getCash() : ResponseEntity<List<StateAndRef<State>>> {
-        return ResponseEntity.ok(proxy.vaultQueryBy<State>().states)
+    fun getCash(@RequestParam(value = "page", defaultValue = "1") page: Int,
+                @RequestParam(value = "size", defaultValue = "$DEFAULT_API_PAGE_SIZE") size: Int,
+                @RequestParam(value = "sort", required = false) sort: String?,
+                @RequestParam(value = "cursor", required = false) cursor: String?,
+                @RequestParam(value = "owner", required = false) owner: String?,
+                request: HttpServletRequest) : ResponseEntity<*> {
+        return queryPage(request) {
+            val filter = cashFilter(owner)
+            proxy.vaultVersion<State>(filter, page, size, sort, cursor) to { proxy.vaultPage<State>(filter(Vault.StateStatus.UNCONSUMED), page, size, sort, cursor, CASH_SORT_FIELDS) }
+        }
+    }
+
+    /**
+     * Returns the cash states produced and consumed since the change cursor [since], filtered as for [getCash]. See
+     * [getTransactionChanges].
+     */
+    @GetMapping(value = [ "cash/changes" ], produces = [APPLICATION_JSON_VALUE])
+    fun getCashChanges(@RequestParam(value = "since", required = false) since: String?,
+                       @RequestParam(value = "size", defaultValue = "$DEFAULT_API_PAGE_SIZE") size: Int,
+                       @RequestParam(value = "owner", required = false) owner: String?) : ResponseEntity<*> {
+        return queryChanges { proxy.vaultChanges<State>(cashFilter(owner), since, size) }
+    }
+
+    private fun assetFilter(cusip: String?, owner: String?): (Vault.StateStatus) -> QueryCriteria {
+        val ownerParty = owner?.let { party(it) }
+        return { status ->
+            var criteria: QueryCriteria = QueryCriteria.VaultQueryCriteria(status)
+            if (cusip != null) criteria = criteria.and(VaultCustomQueryCriteria(AssetSchemaV2.PersistentAsset::cusip.equal(cusip), status))
+            if (ownerParty != null) criteria = criteria.and(VaultCustomQueryCriteria(AssetSchemaV2.PersistentAsset::owner.equal(ownerParty), status))
+            criteria
+        }
+    }
+
+    private fun transferFilter(transferStatus: String?, cusip: String?, counterparty: String?): (Vault.StateStatus) -> QueryCriteria {
+        val statusCode = transferStatus?.let { requestStatus(it).code }
+        val other = counterparty?.let { party(it) }
+        return { status ->
+            var criteria: QueryCriteria = QueryCriteria.VaultQueryCriteria(status)
+            if (statusCode != null) criteria = criteria.and(VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::statusCode.equal(statusCode), status))
+            if (cusip != null) criteria = criteria.and(VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::cusip.equal(cusip), status))
+            if (other != null) {
+                criteria = criteria.and(VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::securitySeller.equal(other), status)
+                        .or(VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::securityBuyer.equal(other), status))
+                        .or(VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::clearingHouse.equal(other), status)))
+            }
+            criteria
+        }
+    }
+
+    private fun cashFilter(owner: String?): (Vault.StateStatus) -> QueryCriteria {
+        val ownerParty = owner?.let { party(it) }
+        return { status ->
+            if (ownerParty != null) QueryCriteria.FungibleAssetQueryCriteria(owner = listOf(ownerParty), status = status) else QueryCriteria.VaultQueryCriteria(status)
+        }
+    }
+
+    /**
+     * Reports whether the flow started by a POST endpoint is still running, and its message or error once it is not.
+     */
+    @GetMapping(value = [ "flows/{id}" ], produces = [APPLICATION_JSON_VALUE])
+    fun getFlow(@PathVariable("id") id: String): ResponseEntity<*> {
+        val status = flows.status(id) ?: return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Flow $id is not known.\n")
+        return ResponseEntity.ok(status)
+    }
+
+    /**
+     * Waits up to [timeout] seconds for the flow started by a POST endpoint, without holding a request thread, and
+     * answers with its message (200) or error (400). A flow still running after the wait answers 202 with its status.
+     */
+    @GetMapping(value = [ "flows/{id}/result" ], produces = [APPLICATION_JSON_VALUE])
+    fun getFlowResult(@PathVariable("id") id: String,
+                      @RequestParam(value = "timeout", defaultValue = "30") timeout: Long): DeferredResult<ResponseEntity<*>> {
+        val answer = DeferredResult<ResponseEntity<*>>()
+        if (timeout !in 1..MAX_RESULT_WAIT_SECONDS) {
+            answer.setResult(ResponseEntity.badRequest().body("Query parameter 'timeout' must be between 1 and $MAX_RESULT_WAIT_SECONDS.\n"))
+            return answer
+        }
+        return flows.result(id, TimeUnit.SECONDS.toMillis(timeout))
+                ?: answer.apply { setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).body("Flow $id is not known.\n")) }
+    }
+
+    /**
+     * Streams the progress of the flow started by a POST endpoint as server-sent events: a `step` event, with its time
+     * and how long the step before took, for each step the flow has reached, and a `done` event with its final status.
+     * The stream ends once the flow does. An unknown flow answers 404 with no body, since the stream cannot carry one.
+     */
+    @GetMapping(value = [ "flows/{id}/progress" ], produces = [TEXT_EVENT_STREAM_VALUE])
+    fun getFlowProgress(@PathVariable("id") id: String): ResponseEntity<SseEmitter> {
+        val progress = flows.progress(id) ?: return ResponseEntity.status(HttpStatus.NOT_FOUND).build()
+        return ResponseEntity.ok(progress)
+    }
+
+    /** Answers a POST that started a flow with 202, the flow's status, and where to follow it. */
+    private fun accepted(status: FlowTracker.FlowStatus): ResponseEntity<FlowTracker.FlowStatus> {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).location(URI.create("flows/${status.id}")).body(status)
+    }
+
+    /**
+     * Runs a vault query for a GET endpoint, turning invalid parameters into a bad request. [query] returns the
+     * listing's version, which is read before the listing so that a tag never claims more than the body holds, and
+     * the listing itself, which is only read when the client's If-None-Match does not already match that version.
+     */
+    private inline fun queryPage(request: HttpServletRequest, query: () -> Pair<String, () -> StatePage<*>>): ResponseEntity<*> {
+        return try {
+            val (etag, page) = query()
+            val ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH)?.split(',')?.map { it.trim() }.orEmpty()
+            if (etag in ifNoneMatch || "*" in ifNoneMatch) {
+                ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build<Any>()
+            } else {
+                ResponseEntity.ok().eTag(etag).body(page())
+            }
+        } catch (ex: IllegalArgumentException) {
+            ResponseEntity.badRequest().body(ex.message ?: "Invalid query.")
+        }
+    }
+
+    /** Runs a change-feed query for a GET endpoint, turning invalid parameters into a bad request. */
+    private inline fun queryChanges(query: () -> VaultChanges<*>): ResponseEntity<*> {
+        return try {
+            ResponseEntity.ok(query())
+        } catch (ex: IllegalArgumentException) {
+            ResponseEntity.badRequest().body(ex.message ?: "Invalid query.")
+        }
+    }
+
+    private fun party(name: String): Party {
+        val x500Name = CordaX500Name.parse(name)
+        return proxy.wellKnownPartyFromX500Name(x500Name) ?: throw IllegalArgumentException("Party named $x500Name cannot be found.")
+    }
+
+    private fun requestStatus(status: String): RequestStatus {
+        return RequestStatus.values().firstOrNull { it.name.equals(status, true) || it.value.equals(status, true) }
+                ?: throw IllegalArgumentException("Unknown status '$status'; expected one of ${RequestStatus.values().map { it.name }}.")
     }
 
     /**
      * Initiates a flow to create a transaction on Seller side.
      *
-     * After a successful completion message is sent to Seller about status of flow.
+     * Answers 202 with the flow's handle as soon as the flow has started. The completion message for Seller is then
+     * reported by [getFlow] and [getFlowResult].
      *
      */
 
-    @PostMapping(value = [ "create-transaction" ], produces = [ TEXT_PLAIN_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
-    fun createTransaction(request: HttpServletRequest): ResponseEntity<String> {
+    @PostMapping(value = [ "create-transaction" ], produces = [ APPLICATION_JSON_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
+    fun createTransaction(request: HttpServletRequest): ResponseEntity<*> {
 
         val cusip = request.getParameter("cusipValue")
         val assetName  = request.getParameter("transactionAssetName")
@@ -117,8 +323,9 @@ class MainController(rpc: NodeRPCConnection) {
         }
 
         return try {
-            val signedTx = proxy.startTrackedFlow(::Initiator,cusip, assetName, AMOUNT(purchaseCost,USD)).returnValue.getOrThrow()
-            ResponseEntity.status(HttpStatus.CREATED).body("Invoice id ${signedTx.id} was successfully created!.\n")
+            accepted(flows.track("create-transaction", proxy.startTrackedFlow(::Initiator, cusip, assetName, AMOUNT(purchaseCost, USD))) {
+                "Invoice id ${it.id} was successfully created!.\n"
+            })
 
         } catch (ex: Throwable) {
             logger.error(ex.message, ex)
@@ -126,16 +333,37 @@ class MainController(rpc: NodeRPCConnection) {
         }
     }
 
+    /**
+     * Creates invoices in bulk from a CSV or NDJSON upload, as [createTransaction] does for one. The upload is read as
+     * a stream in chunks of [UPLOAD_CHUNK_SIZE] rows and at most [concurrency] chunks are issued at once; one NDJSON
+     * result line per row is streamed back as each chunk finishes, then a summary line. See [BulkAssetUploader] for the
+     * row format.
+     */
+
+    @PostMapping(value = [ "create-transactions" ], consumes = [ CSV_MEDIA_TYPE, NDJSON_MEDIA_TYPE ], produces = [ NDJSON_MEDIA_TYPE ])
+    fun createTransactions(@RequestParam(value = "concurrency", defaultValue = "$DEFAULT_UPLOAD_CONCURRENCY") concurrency: Int,
+                           request: HttpServletRequest): ResponseEntity<StreamingResponseBody> {
+        if (concurrency !in 1..MAX_UPLOAD_CONCURRENCY) {
+            val message = "Query parameter 'concurrency' must be between 1 and $MAX_UPLOAD_CONCURRENCY.\n"
+            return ResponseEntity.badRequest().contentType(TEXT_PLAIN).body(StreamingResponseBody { it.write(message.toByteArray()) })
+        }
+        val ndjson = parseMediaType(request.contentType).isCompatibleWith(parseMediaType(NDJSON_MEDIA_TYPE))
+        val input = request.inputStream
+        return ResponseEntity.ok().contentType(parseMediaType(NDJSON_MEDIA_TYPE))
+                .body(StreamingResponseBody { output -> uploader.upload(input, ndjson, concurrency, output) })
+    }
+
     /**
      * Initiates a flow to create a transfer on Seller side and send it to Buyer.
      *
-     * After a successful completion message is sent to Seller about status of flow. Transfer appears on both
-     * Buyer and Seller side in the status 'Pending Confirmation'
+     * Answers 202 with the flow's handle as soon as the flow has started; the completion message for Seller is then
+     * reported by [getFlow] and [getFlowResult]. Transfer appears on both Buyer and Seller side in the status
+     * 'Pending Confirmation'
      *
      */
 
-    @PostMapping(value = [ "create-transfer" ], produces = [ TEXT_PLAIN_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
-    fun createTransfer(request: HttpServletRequest): ResponseEntity<String> {
+    @PostMapping(value = [ "create-transfer" ], produces = [ APPLICATION_JSON_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
+    fun createTransfer(request: HttpServletRequest): ResponseEntity<*> {
 
         val cusipTr = request.getParameter("cusipTr")
         val Buyer = request.getParameter("transferBuyer")
@@ -152,8 +380,9 @@ class MainController(rpc: NodeRPCConnection) {
         val otherParty = proxy.wellKnownPartyFromX500Name(secBuyerName) ?: return ResponseEntity.badRequest().body("Party named $secBuyerName cannot be found.\n")
 
         return try {
-            val signedTr = proxy.startTrackedFlow(::CreateAssetTransferRequestInitiatorFlow,cusipTr,otherParty).returnValue.getOrThrow()
-            ResponseEntity.status(HttpStatus.CREATED).body("Transfer id ${signedTr.id} was successfully sent to buyer!.\n")
+            accepted(flows.track("create-transfer", proxy.startTrackedFlow(::CreateAssetTransferRequestInitiatorFlow, cusipTr, otherParty)) {
+                "Transfer id ${it.id} was successfully sent to buyer!.\n"
+            })
 
         } catch (ex: Throwable) {
             logger.error(ex.message, ex)
@@ -164,12 +393,13 @@ class MainController(rpc: NodeRPCConnection) {
     /**
      * Initiates a flow to confirm a transaction from buyer side.
      *
-     * After a successful completion message is sent to Buyer about status of flow and status is updated to 'Pending'
+     * Answers 202 with the flow's handle as soon as the flow has started; the completion message for Buyer is then
+     * reported by [getFlow] and [getFlowResult], and status is updated to 'Pending'
      *
      */
 
-    @PostMapping(value = [ "create-confirm" ], produces = [ TEXT_PLAIN_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
-    fun createConfirm(request: HttpServletRequest): ResponseEntity<String> {
+    @PostMapping(value = [ "create-confirm" ], produces = [ APPLICATION_JSON_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
+    fun createConfirm(request: HttpServletRequest): ResponseEntity<*> {
 
         val linearId = request.getParameter("linearId")
         val clearingNode = request.getParameter("clearingNode")
@@ -186,8 +416,9 @@ class MainController(rpc: NodeRPCConnection) {
         val cleHouse = proxy.wellKnownPartyFromX500Name(clearingNodeName) ?: return ResponseEntity.badRequest().body("Party named $clearingNodeName cannot be found.\n")
 
         return try {
-            val confirmedTr = proxy.startTrackedFlow(::ConfirmAssetTransferRequestInitiatorFlow,linId,cleHouse).returnValue.getOrThrow()
-            ResponseEntity.status(HttpStatus.CREATED).body("Transfer id ${confirmedTr.id} is conirmed by Buyer. Waiting for Clearing house verifcation\n")
+            accepted(flows.track("create-confirm", proxy.startTrackedFlow(::ConfirmAssetTransferRequestInitiatorFlow, linId, cleHouse)) {
+                "Transfer id ${it.id} is conirmed by Buyer. Waiting for Clearing house verifcation\n"
+            })
         } catch (ex: Throwable) {
             logger.error(ex.message, ex)
             ResponseEntity.badRequest().body(ex.message!!)
@@ -198,12 +429,13 @@ class MainController(rpc: NodeRPCConnection) {
     /**
      * Initiates a flow to validate transaction from Clearing house.
      *
-     * After a successful completion message is sent to Seller about status of flow
+     * Answers 202 with the flow's handle as soon as the flow has started; the completion message is then reported by
+     * [getFlow] and [getFlowResult]
      *
      */
 
-    @PostMapping(value = [ "create-clear" ], produces = [ TEXT_PLAIN_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
-    fun createClear(request: HttpServletRequest): ResponseEntity<String> {
+    @PostMapping(value = [ "create-clear" ], produces = [ APPLICATION_JSON_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"] )
+    fun createClear(request: HttpServletRequest): ResponseEntity<*> {
 
         val linearId = request.getParameter("linearId")
 
@@ -214,8 +446,9 @@ class MainController(rpc: NodeRPCConnection) {
         }
 
         return try {
-            val clearTr = proxy.startTrackedFlow(::AssetSettlementInitiatorFlow, linrId).returnValue.getOrThrow()
-            ResponseEntity.status(HttpStatus.CREATED).body("Verification of ${clearTr.id} is successfully COMPLETED!\n")
+            accepted(flows.track("create-clear", proxy.startTrackedFlow(::AssetSettlementInitiatorFlow, linrId)) {
+                "Verification of ${it.id} is successfully COMPLETED!\n"
+            })
         } catch (ex: Throwable) {
             logger.error(ex.message, ex)
             ResponseEntity.badRequest().body(ex.message!!)
@@ -225,11 +458,12 @@ class MainController(rpc: NodeRPCConnection) {
     /**
      * Initiates a flow to self issue cash on the buyer side.
      *
+     * Answers 202 with the flow's handle as soon as the flow has started.
      *
      */
 
-    @PostMapping( value = [ "create-issue" ], produces = [ TEXT_PLAIN_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"])
-    fun createIssue(request: HttpServletRequest): ResponseEntity<String> {
+    @PostMapping( value = [ "create-issue" ], produces = [ APPLICATION_JSON_VALUE ], headers =  ["Content-Type=application/x-www-form-urlencoded"])
+    fun createIssue(request: HttpServletRequest): ResponseEntity<*> {
 
         val amount = request.getParameter("amount")
         val issuerBank = request.getParameter("issuerBank").toByte()
@@ -253,8 +487,9 @@ class MainController(rpc: NodeRPCConnection) {
         val notaryIdent = proxy.wellKnownPartyFromX500Name(notaryName) ?: return ResponseEntity.badRequest().body("Party named $notaryName cannot be found.\n")
 
         return try {
-            val cashTx = proxy.startTrackedFlow(::CashIssueFlow,am,isBank,notaryIdent).returnValue.getOrThrow()
-            ResponseEntity.status(HttpStatus.CREATED).body("Money was successfully issued")
+            accepted(flows.track("create-issue", proxy.startTrackedFlow(::CashIssueFlow, am, isBank, notaryIdent)) {
+                "Money was successfully issued"
+            })
 
         } catch (ex: Throwable) {
             logger.error(ex.message, ex)
@@ -2,10 +2,24 @@ package com.template.cordapp.server
 
 import net.corda.client.rpc.CordaRPCClient
 import net.corda.client.rpc.CordaRPCConnection
+import net.corda.client.rpc.RPCException
 import net.corda.core.messaging.CordaRPCOps
 import net.corda.core.utilities.NetworkHostAndPort
+import org.apache.activemq.artemis.api.core.ActiveMQException
+import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Component
+import rx.Observable
+import rx.Subscription
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import javax.annotation.PostConstruct
 import javax.annotation.PreDestroy
 
@@ -13,45 +27,264 @@ private const val CORDA_USER_NAME = "config.rpc.username"
 private const val CORDA_USER_PASSWORD = "config.rpc.password"
 private const val CORDA_NODE_HOST = "config.rpc.host"
 private const val CORDA_RPC_PORT = "config.rpc.port"
+private const val CORDA_RPC_POOL_SIZE = "config.rpc.poolSize"
+
+private const val HEALTH_CHECK_INTERVAL_SECONDS = 10L
+private const val INITIAL_BACKOFF_MILLIS = 500L
+private const val MAX_BACKOFF_MILLIS = 30_000L
 
 /**
- * Wraps a node RPC proxy.
+ * Wraps a pool of node RPC connections.
+ *
+ * The RPC connections are configured based on the properties in `application.properties`. Every call on [proxy] is
+ * dispatched round-robin to a healthy connection, so one slow call, such as a large vault query, does not hold up the
+ * calls of other users queued behind it on the same connection.
  *
- * The RPC proxy is configured based on the properties in `application.properties`.
+ * Connections are checked every [HEALTH_CHECK_INTERVAL_SECONDS] seconds. A connection that fails a check or a call is
+ * dropped from the rotation and reopened in the background with exponential backoff, so calls carry on over the
+ * others and the pool heals by itself after a node restart. Observables opened with [track] are opened again on a
+ * healthy connection when theirs is lost.
  *
  * @property host The host of the node we are connecting to.
  * @property rpcPort The RPC port of the node we are connecting to.
  * @property username The username for logging into the RPC client.
  * @property password The password for logging into the RPC client.
- * @property proxy The RPC proxy.
+ * @property poolSize How many RPC connections to keep open.
+ * @property proxy The RPC proxy, backed by the whole pool.
  */
 @Component
 open class NodeRPCConnection(
         @Value("\${$CORDA_NODE_HOST}") private val host: String,
         @Value("\${$CORDA_USER_NAME}") private val username: String,
         @Value("\${$CORDA_USER_PASSWORD}") private val password: String,
-        @Value("\${$CORDA_RPC_PORT}") private val rpcPort: Int) {
+        @Value("\${$CORDA_RPC_PORT}") private val rpcPort: Int,
+        @Value("\${$CORDA_RPC_POOL_SIZE:4}") private val poolSize: Int) {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(NodeRPCConnection::class.java)
+    }
 
-    lateinit var rpcConnection: CordaRPCConnection
-        private set
     lateinit var proxy: CordaRPCOps
         private set
 
+    private lateinit var rpcClient: CordaRPCClient
+    private lateinit var slots: List<Slot>
+    private val next = AtomicInteger()
+    private val tracked = CopyOnWriteArrayList<TrackedObservable<*>>()
+    private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "rpc-connection-pool").apply { isDaemon = true }
+    }
+    @Volatile
+    private var closed = false
+
     @PostConstruct
     fun initialiseNodeRPCConnection() {
+        require(poolSize > 0) { "$CORDA_RPC_POOL_SIZE must be at least 1." }
+        rpcClient = CordaRPCClient(NetworkHostAndPort(host, rpcPort))
+        slots = (0 until poolSize).map { Slot(it) }
+
+        // Start up only if the node can be reached at all; connections that fail beyond the first keep retrying.
+        var firstError: Exception? = null
+        slots.forEach { slot -> slot.connect()?.let { if (firstError == null) firstError = it } }
+        if (slots.none { it.isHealthy }) throw firstError!!
 
-        val rpcAddress = NetworkHostAndPort(host, rpcPort)
-        val rpcClient = CordaRPCClient(rpcAddress)
-        val rpcConnection = rpcClient.start(username, password)
-        proxy = rpcConnection.proxy
+        proxy = Proxy.newProxyInstance(CordaRPCOps::class.java.classLoader, arrayOf(CordaRPCOps::class.java), PooledInvocationHandler()) as CordaRPCOps
+        scheduler.scheduleWithFixedDelay(Runnable { checkHealth() }, HEALTH_CHECK_INTERVAL_SECONDS, HEALTH_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS)
+    }
+
+    /**
+     * Subscribes [onNext] to the observable [open] returns, and keeps it subscribed across lost connections by calling
+     * [open] again on a healthy one. [onResubscribed] is called each time that happens, since anything emitted while
+     * no connection was open has been missed. Unsubscribe the returned [Subscription] to stop.
+     */
+    fun <T> track(open: (CordaRPCOps) -> Observable<T>, onNext: (T) -> Unit, onResubscribed: () -> Unit = {}): Subscription {
+        val observable = TrackedObservable(open, onNext, onResubscribed)
+        tracked += observable
+        observable.subscribe(initial = true)
+        return observable
     }
 
     @PreDestroy
     fun close() {
-        rpcConnection.notifyServerAndClose()
+        closed = true
+        scheduler.shutdownNow()
+        tracked.forEach { it.unsubscribe() }
+        slots.forEach { it.close() }
+    }
+
+    private fun checkHealth() {
+        slots.forEach { slot ->
+            val connection = slot.connection ?: return@forEach
+            try {
+                connection.proxy.currentNodeTime()
+            } catch (e: Exception) {
+                slot.fail(connection, e)
+            }
+        }
     }
 
+    /** The next healthy connection in round-robin order. */
+    private fun nextSlot(): Slot {
+        val start = Math.floorMod(next.getAndIncrement(), slots.size)
+        for (i in 0 until slots.size) {
+            val slot = slots[(start + i) % slots.size]
+            if (slot.isHealthy) return slot
+        }
+        throw RPCException("No RPC connection to $host:$rpcPort is open; reconnecting.")
+    }
+
+    private fun isConnectionFailure(e: Throwable): Boolean {
+        var cause: Throwable? = e
+        while (cause != null) {
+            if (cause is RPCException || cause is ActiveMQException) return true
+            cause = cause.cause
+        }
+        return false
+    }
 
+    private fun backoff(attempt: Int): Long = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS shl Math.min(attempt, 16))
 
+    /** One pooled connection, reopened with backoff whenever it is lost. */
+    private inner class Slot(val index: Int) {
+        @Volatile
+        var connection: CordaRPCConnection? = null
+            private set
+        private var attempt = 0
 
-}
\ No newline at end of file
+        val isHealthy: Boolean get() = connection != null
+
+        /** Opens the connection, or schedules another attempt and returns why it failed. */
+        @Synchronized
+        fun connect(): Exception? {
+            if (closed || connection != null) return null
+            return try {
+                connection = rpcClient.start(username, password)
+                if (attempt > 0) logger.info("RPC connection {} to {}:{} reopened", index, host, rpcPort)
+                attempt = 0
+                tracked.forEach { it.resubscribeIfIdle() }
+                null
+            } catch (e: Exception) {
+                val delay = backoff(attempt++)
+                logger.warn("RPC connection {} to {}:{} failed, retrying in {} ms: {}", index, host, rpcPort, delay, e.message)
+                scheduler.schedule(Runnable { connect() }, delay, TimeUnit.MILLISECONDS)
+                e
+            }
+        }
+
+        /** Drops [failed] from the rotation, if it is still this slot's connection, and starts reconnecting. */
+        @Synchronized
+        fun fail(failed: CordaRPCConnection, cause: Throwable) {
+            if (connection !== failed) return
+            logger.warn("RPC connection {} to {}:{} lost: {}", index, host, rpcPort, cause.message)
+            connection = null
+            try {
+                failed.forceClose()
+            } catch (e: Exception) {
+                logger.debug("Closing lost RPC connection $index failed", e)
+            }
+            tracked.forEach { it.resubscribeIfOn(failed) }
+            if (!closed) scheduler.execute { connect() }
+        }
+
+        @Synchronized
+        fun close() {
+            val open = connection ?: return
+            connection = null
+            try {
+                open.notifyServerAndClose()
+            } catch (e: Exception) {
+                logger.debug("Closing RPC connection $index failed", e)
+            }
+        }
+    }
+
+    /**
+     * Forwards [CordaRPCOps] calls to the next healthy connection. A call that fails because its connection broke takes
+     * that connection out of the rotation; the error still reaches the caller, since the call may have reached the node.
+     */
+    private inner class PooledInvocationHandler : InvocationHandler {
+        override fun invoke(proxy: Any, method: Method, args: Array<out Any?>?): Any? {
+            if (method.declaringClass == Any::class.java) {
+                return when (method.name) {
+                    "equals" -> proxy === args!![0]
+                    "hashCode" -> System.identityHashCode(proxy)
+                    else -> "Pooled RPC proxy to $host:$rpcPort"
+                }
+            }
+            val slot = nextSlot()
+            val connection = slot.connection ?: return invoke(proxy, method, args)
+            return try {
+                method.invoke(connection.proxy, *(args ?: emptyArray()))
+            } catch (e: InvocationTargetException) {
+                val cause = e.targetException
+                if (isConnectionFailure(cause)) slot.fail(connection, cause)
+                throw cause
+            }
+        }
+    }
+
+    /** An observable kept open across lost connections; see [track]. */
+    private inner class TrackedObservable<T>(private val open: (CordaRPCOps) -> Observable<T>,
+                                             private val onNext: (T) -> Unit,
+                                             private val onResubscribed: () -> Unit) : Subscription {
+        @Volatile
+        private var current: Pair<CordaRPCConnection, Subscription>? = null
+        @Volatile
+        private var unsubscribed = false
+        private var attempt = 0
+
+        @Synchronized
+        fun subscribe(initial: Boolean = false) {
+            if (unsubscribed || closed || current != null) return
+            val slot = try {
+                nextSlot()
+            } catch (e: RPCException) {
+                return // Resubscribed once a connection reopens.
+            }
+            val connection = slot.connection ?: return scheduleRetry()
+            try {
+                val subscription = open(connection.proxy).subscribe({ onNext(it) }, { error ->
+                    logger.warn("Tracked RPC observable failed, resubscribing: {}", error.message)
+                    resubscribeIfOn(connection)
+                }, {
+                    resubscribeIfOn(connection)
+                })
+                current = connection to subscription
+                attempt = 0
+                if (!initial) onResubscribed()
+            } catch (e: Exception) {
+                // A broken connection is left for the health check to find.
+                if (initial) throw e
+                scheduleRetry()
+            }
+        }
+
+        private fun scheduleRetry() {
+            if (!closed) scheduler.schedule(Runnable { subscribe() }, backoff(attempt++), TimeUnit.MILLISECONDS)
+        }
+
+        /** Opens the observable again elsewhere if it was opened on [connection]. */
+        @Synchronized
+        fun resubscribeIfOn(connection: CordaRPCConnection) {
+            val (on, subscription) = current ?: return
+            if (on !== connection) return
+            current = null
+            subscription.unsubscribe()
+            if (!closed) scheduler.execute { subscribe() }
+        }
+
+        fun resubscribeIfIdle() {
+            if (current == null && !closed) scheduler.execute { subscribe() }
+        }
+
+        override fun isUnsubscribed() = unsubscribed
+
+        @Synchronized
+        override fun unsubscribe() {
+            unsubscribed = true
+            current?.second?.unsubscribe()
+            current = null
+            tracked.remove(this)
+        }
+    }
+}
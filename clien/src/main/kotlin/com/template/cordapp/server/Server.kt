@@ -7,6 +7,11 @@ import org.springframework.boot.SpringApplication
 import org.springframework.boot.autoconfigure.SpringBootApplication
 import org.springframework.context.annotation.Bean
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer
+import java.util.concurrent.TimeUnit
+
+private val STREAMING_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(12)
 
 /**
  * A Spring Boot application.
@@ -24,6 +29,17 @@ open class Server {
         converter.objectMapper = mapper
         return converter
     }
+
+    /**
+     * Spring Bean that lets streamed responses, such as the results of a bulk upload, run for as long as the upload
+     * takes rather than the servlet container's default. Endpoints that wait with a deadline of their own set it.
+     */
+    @Bean
+    open fun asyncSupportConfigurer(): WebMvcConfigurer = object : WebMvcConfigurer {
+        override fun configureAsyncSupport(configurer: AsyncSupportConfigurer) {
+            configurer.setDefaultTimeout(STREAMING_TIMEOUT_MILLIS)
+        }
+    }
 }
 
 /**
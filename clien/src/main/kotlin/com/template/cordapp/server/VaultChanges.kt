@@ -0,0 +1,89 @@
+package com.template.cordapp.server
+
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.crypto.SecureHash
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.core.messaging.vaultQueryBy
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.PageSpecification
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.Sort
+
+/**
+ * How far behind the node's clock a change feed stays. A state's recorded or consumed time is taken before its
+ * database transaction commits, so a state stamped just before another may only become visible after it; holding back
+ * the last moments keeps such a state from landing behind a cursor that has already moved past it.
+ */
+const val CHANGE_SETTLE_MILLIS = 2_000L
+
+/**
+ * The position of a change feed: the last produced state and the last consumed state delivered so far, each as a
+ * [VaultCursor] in ascending time order. Either is null until the feed has delivered a state of that kind.
+ */
+data class ChangeCursor(val produced: VaultCursor?, val consumed: VaultCursor?) {
+
+    fun encode(): String = listOf(produced, consumed).joinToString(".") { it?.encode() ?: "-" }
+
+    companion object {
+        fun decode(cursor: String?): ChangeCursor {
+            if (cursor == null || cursor.isBlank()) return ChangeCursor(null, null)
+            val parts = cursor.split('.')
+            require(parts.size == 2) { "Malformed cursor." }
+            val (produced, consumed) = parts.map { if (it == "-") null else VaultCursor.decode(it) }
+            require(listOfNotNull(produced, consumed).all { it.direction == Sort.Direction.ASC }) { "Malformed cursor." }
+            return ChangeCursor(produced, consumed)
+        }
+    }
+}
+
+/**
+ * What changed in the vault since a cursor.
+ *
+ * @property produced States recorded since the cursor that are still unconsumed, oldest first.
+ * @property consumed References, as `txhash(index)`, of states consumed since the cursor, oldest first.
+ * @property nextCursor Pass back as `since` to fetch the changes that follow.
+ * @property hasMore Whether more changes are ready now; when false, poll again later.
+ */
+data class VaultChanges<out T : ContractState>(val produced: List<StateAndRef<T>>, val consumed: List<String>,
+                                               val nextCursor: String, val hasMore: Boolean)
+
+/**
+ * Up to [size] produced and up to [size] consumed states of type [T] that changed after [since], an encoded
+ * [ChangeCursor], or since the vault began without one. [filter] builds the query criteria for a given vault status.
+ *
+ * Applying [VaultChanges.produced] and then [VaultChanges.consumed] to a copy of the unconsumed states brings it up to
+ * date: a state produced and consumed between two calls is only ever reported as consumed, which removes nothing.
+ */
+inline fun <reified T : ContractState> CordaRPCOps.vaultChanges(filter: (Vault.StateStatus) -> QueryCriteria,
+                                                               since: String?, size: Int): VaultChanges<T> {
+    require(size in 1..MAX_API_PAGE_SIZE) { "Page size must be between 1 and $MAX_API_PAGE_SIZE." }
+    val from = ChangeCursor.decode(since)
+    val until = currentNodeTime().minusMillis(CHANGE_SETTLE_MILLIS)
+
+    val produced = keysetPage<T>(filter(Vault.StateStatus.UNCONSUMED), QueryCriteria.TimeInstantType.RECORDED,
+            from.produced, Sort.Direction.ASC, until, size)
+    val consumed = keysetPage<T>(filter(Vault.StateStatus.CONSUMED), QueryCriteria.TimeInstantType.CONSUMED,
+            from.consumed, Sort.Direction.ASC, until, size)
+
+    val next = ChangeCursor(produced.last ?: from.produced, consumed.last ?: from.consumed)
+    return VaultChanges(produced.states, consumed.states.map { it.ref.toString() }, next.encode(),
+            produced.full || consumed.full)
+}
+
+/**
+ * An entity tag for one page of the states of type [T] that [filter] selects, where [page] names the page: its number,
+ * size, sort and cursor. It changes whenever such a state is produced or consumed, differs between pages of the same
+ * states, and costs two single-row queries rather than the listing itself.
+ */
+inline fun <reified T : ContractState> CordaRPCOps.vaultVersion(filter: (Vault.StateStatus) -> QueryCriteria,
+                                                               vararg page: Any?): String {
+    val latest = PageSpecification(1, 1)
+    val recorded = vaultQueryBy<T>(filter(Vault.StateStatus.ALL), latest,
+            keysetSort(QueryCriteria.TimeInstantType.RECORDED, Sort.Direction.DESC))
+    val consumed = vaultQueryBy<T>(filter(Vault.StateStatus.CONSUMED), latest,
+            keysetSort(QueryCriteria.TimeInstantType.CONSUMED, Sort.Direction.DESC))
+    // Counts as well as the newest states, so that a state stamped earlier but committed later still changes the tag.
+    val version = listOf(recorded, consumed).joinToString("|") { "${it.totalStatesAvailable}:${it.states.firstOrNull()?.ref}" }
+    return "\"${SecureHash.sha256(page.joinToString("|", postfix = "|") + version)}\""
+}
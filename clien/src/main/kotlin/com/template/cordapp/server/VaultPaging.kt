@@ -0,0 +1,210 @@
+package com.template.cordapp.server
+
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.contracts.StateRef
+import net.corda.core.crypto.SecureHash
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.core.messaging.vaultQueryBy
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.*
+import java.time.Instant
+import java.util.*
+
+const val DEFAULT_API_PAGE_SIZE = 50
+const val MAX_API_PAGE_SIZE = 1000
+
+/**
+ * One page of vault states as returned by the REST API.
+ *
+ * @property states The states on this page.
+ * @property page The 1-based page number, or null when the page was fetched with a cursor.
+ * @property size The requested page size.
+ * @property totalStatesAvailable How many states match the query across all pages, or from the cursor on when paged by
+ * cursor.
+ * @property nextCursor Pass back as `cursor` to fetch the following page; null once the last page has been returned.
+ */
+data class StatePage<out T : ContractState>(
+        val states: List<StateAndRef<T>>,
+        val page: Int?,
+        val size: Int,
+        val totalStatesAvailable: Long,
+        val nextCursor: String?)
+
+/**
+ * Position just after the last state of a page, in recorded-time (or consumed-time) order with the state reference as
+ * tie-breaker.
+ *
+ * Paging by cursor is keyset paging: the next page is "states recorded at or after [time] that sort after [ref]", so
+ * states recorded or consumed while a client pages through the vault do not shift later pages the way they shift page
+ * numbers. The cursor is opaque to clients and URL safe.
+ */
+data class VaultCursor(val time: Instant, val ref: StateRef, val direction: Sort.Direction) {
+
+    fun encode(): String {
+        val raw = "${direction.name}|${time.epochSecond}|${time.nano}|${ref.txhash}|${ref.index}"
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toByteArray(Charsets.UTF_8))
+    }
+
+    /** Whether a state at [otherTime] with reference [other] sorts strictly after this cursor. */
+    fun isBefore(otherTime: Instant, other: StateRef): Boolean {
+        var cmp = otherTime.compareTo(time)
+        if (cmp == 0) cmp = other.txhash.toString().compareTo(ref.txhash.toString())
+        if (cmp == 0) cmp = other.index.compareTo(ref.index)
+        return if (direction == Sort.Direction.ASC) cmp > 0 else cmp < 0
+    }
+
+    companion object {
+        fun decode(cursor: String): VaultCursor {
+            val parts = try {
+                String(Base64.getUrlDecoder().decode(cursor), Charsets.UTF_8).split('|')
+            } catch (e: IllegalArgumentException) {
+                throw IllegalArgumentException("Malformed cursor.")
+            }
+            require(parts.size == 5) { "Malformed cursor." }
+            return try {
+                VaultCursor(Instant.ofEpochSecond(parts[1].toLong(), parts[2].toLong()),
+                        StateRef(SecureHash.parse(parts[3]), parts[4].toInt()),
+                        Sort.Direction.valueOf(parts[0]))
+            } catch (e: IllegalArgumentException) {
+                throw IllegalArgumentException("Malformed cursor.")
+            }
+        }
+    }
+}
+
+/**
+ * Parses a `sort` request parameter of the form `field[,asc|desc]`. [fields] maps the field names an endpoint accepts
+ * to vault sort attributes; `recorded` is always accepted. Every sort ends with the state reference so that pages are
+ * deterministic when the sort field has ties. With no `sort` at all, the newest states come first.
+ */
+fun parseSort(sort: String?, fields: Map<String, SortAttribute> = emptyMap()): Sort {
+    val (field, direction) = sortField(sort)
+    val attribute = when (field) {
+        "recorded" -> SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME)
+        else -> fields[field] ?: throw IllegalArgumentException(
+                "Cannot sort by '$field'; expected one of ${listOf("recorded") + fields.keys}.")
+    }
+    return Sort(listOf(
+            Sort.SortColumn(attribute, direction),
+            Sort.SortColumn(SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), direction),
+            Sort.SortColumn(SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), direction)))
+}
+
+private fun sortField(sort: String?): Pair<String, Sort.Direction> {
+    if (sort == null || sort.isBlank()) return "recorded" to Sort.Direction.DESC
+    val parts = sort.split(',').map { it.trim() }
+    require(parts.size <= 2) { "Sort must be 'field' or 'field,asc|desc'." }
+    val direction = when (parts.getOrNull(1)?.toLowerCase()) {
+        null, "asc" -> Sort.Direction.ASC
+        "desc" -> Sort.Direction.DESC
+        else -> throw IllegalArgumentException("Sort direction must be 'asc' or 'desc'.")
+    }
+    return parts[0] to direction
+}
+
+/**
+ * Runs [criteria] as one page of at most [size] states.
+ *
+ * Without a [cursor] this is classic offset paging over [page] and [sort]. With one, [page] is ignored and the query
+ * continues in recorded-time order from where the cursor left off, in the direction the cursor was issued with. Either
+ * way the returned page carries a cursor for the page that follows, as long as it was sorted by recorded time.
+ */
+inline fun <reified T : ContractState> CordaRPCOps.vaultPage(criteria: QueryCriteria, page: Int, size: Int,
+                                                            sort: String?, cursor: String?,
+                                                            sortFields: Map<String, SortAttribute> = emptyMap()): StatePage<T> {
+    require(page >= 1) { "Page numbers start at 1." }
+    require(size in 1..MAX_API_PAGE_SIZE) { "Page size must be between 1 and $MAX_API_PAGE_SIZE." }
+    val sorting = parseSort(sort, sortFields)
+    val keyed = sorting.columns.first().sortAttribute == SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME)
+
+    if (cursor == null) {
+        val result = vaultQueryBy<T>(criteria, PageSpecification(page, size), sorting)
+        val direction = sorting.columns.first().direction
+        val next = if (keyed && result.states.size == size) {
+            VaultCursor(result.statesMetadata.last().recordedTime, result.states.last().ref, direction).encode()
+        } else null
+        return StatePage(result.states, page, size, result.totalStatesAvailable, next)
+    }
+
+    val from = VaultCursor.decode(cursor)
+    require(sort == null || keyed) { "A cursor can only continue a page sorted by 'recorded'." }
+    val result = keysetPage<T>(criteria, QueryCriteria.TimeInstantType.RECORDED, from, from.direction, null, size)
+    return StatePage(result.states, null, size, result.totalStatesAvailable, result.last?.takeIf { result.full }?.encode())
+}
+
+/**
+ * One keyset page: [states] in time order, the [last] of them as a cursor, and whether the page is [full], in which
+ * case more states may follow.
+ */
+class KeysetPage<out T : ContractState>(val states: List<StateAndRef<T>>, val last: VaultCursor?,
+                                        val totalStatesAvailable: Long, val full: Boolean)
+
+/**
+ * Up to [size] states matching [criteria], ordered by their [timeType] time (recorded or consumed) in [direction] and
+ * then by state reference, that sort after [after] (or from the start without one) and whose time is no later than
+ * [until] (for ascending pages).
+ */
+inline fun <reified T : ContractState> CordaRPCOps.keysetPage(criteria: QueryCriteria, timeType: QueryCriteria.TimeInstantType,
+                                                             after: VaultCursor?, direction: Sort.Direction,
+                                                             until: Instant?, size: Int): KeysetPage<T> {
+    val predicate: ColumnPredicate<Instant>? = when {
+        after != null && until != null && direction == Sort.Direction.ASC -> ColumnPredicate.Between(after.time, until)
+        after != null -> ColumnPredicate.BinaryComparison(if (direction == Sort.Direction.ASC) {
+            BinaryComparisonOperator.GREATER_THAN_OR_EQUAL
+        } else {
+            BinaryComparisonOperator.LESS_THAN_OR_EQUAL
+        }, after.time)
+        until != null -> ColumnPredicate.BinaryComparison(BinaryComparisonOperator.LESS_THAN_OR_EQUAL, until)
+        else -> null
+    }
+    val keyedCriteria = if (predicate == null) criteria else criteria.and(QueryCriteria.VaultQueryCriteria(
+            status = criteria.stateStatus(), timeCondition = QueryCriteria.TimeCondition(timeType, predicate)))
+    val keyedSort = keysetSort(timeType, direction)
+
+    // Only states at exactly the cursor's instant can fall on the wrong side of it, so this rarely needs more than the
+    // first query.
+    val states = ArrayList<StateAndRef<T>>(size)
+    var last: VaultCursor? = null
+    var total = 0L
+    var queryPage = 1
+    while (states.size < size) {
+        val result = vaultQueryBy<T>(keyedCriteria, PageSpecification(queryPage, size), keyedSort)
+        if (queryPage == 1) total = result.totalStatesAvailable
+        result.states.forEachIndexed { i, state ->
+            val time = stateTime(result.statesMetadata[i], timeType)
+            if (states.size < size && (after == null || after.isBefore(time, state.ref))) {
+                states += state
+                last = VaultCursor(time, state.ref, direction)
+            }
+        }
+        if (result.states.size < size) break
+        queryPage++
+    }
+    return KeysetPage(states, last, total, states.size == size)
+}
+
+/** Sorts by [timeType] time in [direction], then by state reference. */
+fun keysetSort(timeType: QueryCriteria.TimeInstantType, direction: Sort.Direction): Sort {
+    val time = when (timeType) {
+        QueryCriteria.TimeInstantType.RECORDED -> Sort.VaultStateAttribute.RECORDED_TIME
+        QueryCriteria.TimeInstantType.CONSUMED -> Sort.VaultStateAttribute.CONSUMED_TIME
+    }
+    return Sort(listOf(
+            Sort.SortColumn(SortAttribute.Standard(time), direction),
+            Sort.SortColumn(SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), direction),
+            Sort.SortColumn(SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), direction)))
+}
+
+fun stateTime(metadata: Vault.StateMetadata, timeType: QueryCriteria.TimeInstantType): Instant = when (timeType) {
+    QueryCriteria.TimeInstantType.RECORDED -> metadata.recordedTime
+    QueryCriteria.TimeInstantType.CONSUMED -> metadata.consumedTime ?: metadata.recordedTime
+}
+
+/** The vault status [criteria] already selects, so an added time condition does not widen or narrow it. */
+fun QueryCriteria.stateStatus(): Vault.StateStatus = when (this) {
+    is QueryCriteria.CommonQueryCriteria -> status
+    is QueryCriteria.AndComposition -> a.stateStatus()
+    is QueryCriteria.OrComposition -> a.stateStatus()
+    else -> Vault.StateStatus.UNCONSUMED
+}
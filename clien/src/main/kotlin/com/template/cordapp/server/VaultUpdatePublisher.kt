@@ -0,0 +1,76 @@
+package com.template.cordapp.server
+
+import com.template.cordapp.state.Asset
+import com.template.cordapp.state.AssetTransfer
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.core.messaging.vaultTrackBy
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.PageSpecification
+import net.corda.finance.contracts.asset.Cash
+import org.slf4j.LoggerFactory
+import org.springframework.messaging.simp.SimpMessagingTemplate
+import org.springframework.stereotype.Component
+import rx.Observable
+import rx.Subscription
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+const val ASSET_TOPIC = "/topic/vault/assets"
+const val TRANSFER_TOPIC = "/topic/vault/transfers"
+const val CASH_TOPIC = "/topic/vault/cash"
+const val RESYNC_TOPIC = "/topic/vault/resync"
+
+/**
+ * One vault update as pushed to browsers.
+ *
+ * @property produced States the update added to the vault.
+ * @property consumed References, as `txhash(index)`, of states the update consumed.
+ */
+data class VaultDelta(val produced: List<StateAndRef<ContractState>>, val consumed: List<String>)
+
+/**
+ * Tracks the node's [Asset], [AssetTransfer] and [Cash.State] vault updates once, over a single RPC subscription each,
+ * and fans every update out to all connected browsers as a [VaultDelta] on [ASSET_TOPIC], [TRANSFER_TOPIC] and
+ * [CASH_TOPIC]. Browsers load the current states through [MainController] and then apply the deltas, rather than
+ * fetching every state again after each change. When the node comes back after being unreachable, the topic that was
+ * interrupted is named on [RESYNC_TOPIC] so that browsers load it again.
+ */
+@Component
+open class VaultUpdatePublisher(private val rpcConnection: NodeRPCConnection,
+                                private val messagingTemplate: SimpMessagingTemplate) {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(VaultUpdatePublisher::class.java)
+    }
+
+    private val subscriptions = ArrayList<Subscription>()
+
+    @PostConstruct
+    fun subscribe() {
+        // Only the updates are pushed; a one-state snapshot keeps the initial query cheap on a large vault.
+        val snapshotPage = PageSpecification(1, 1)
+        publish(ASSET_TOPIC) { it.vaultTrackBy<Asset>(paging = snapshotPage).updates }
+        publish(TRANSFER_TOPIC) { it.vaultTrackBy<AssetTransfer>(paging = snapshotPage).updates }
+        publish(CASH_TOPIC) { it.vaultTrackBy<Cash.State>(paging = snapshotPage).updates }
+    }
+
+    private fun <T : ContractState> publish(topic: String, track: (CordaRPCOps) -> Observable<Vault.Update<T>>) {
+        subscriptions += rpcConnection.track(track, { update ->
+            if (!update.isEmpty()) {
+                val delta = VaultDelta(update.produced.toList(), update.consumed.map { it.ref.toString() })
+                messagingTemplate.convertAndSend(topic, delta)
+            }
+        }, {
+            // Updates were missed while the node was unreachable, so browsers must load this topic's states again.
+            logger.info("Vault updates for {} resumed, asking browsers to reload", topic)
+            messagingTemplate.convertAndSend(RESYNC_TOPIC, mapOf("topic" to topic))
+        })
+    }
+
+    @PreDestroy
+    fun close() {
+        subscriptions.forEach { it.unsubscribe() }
+    }
+}
@@ -0,0 +1,38 @@
+package com.template.cordapp.server
+
+import net.corda.client.jackson.JacksonSupport
+import org.springframework.context.annotation.Configuration
+import org.springframework.messaging.converter.MappingJackson2MessageConverter
+import org.springframework.messaging.converter.MessageConverter
+import org.springframework.messaging.simp.config.MessageBrokerRegistry
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer
+
+/**
+ * STOMP over WebSocket (with a SockJS fallback) at `/ws`, with an in-memory broker for the `/topic` destinations
+ * [VaultUpdatePublisher] pushes to.
+ *
+ * Messages are written with the Corda Jackson object-mapper, as HTTP responses are, so that states look the same to the
+ * browser whichever way they arrive.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+open class WebSocketConfig(private val rpcConnection: NodeRPCConnection) : WebSocketMessageBrokerConfigurer {
+
+    override fun registerStompEndpoints(registry: StompEndpointRegistry) {
+        registry.addEndpoint("/ws").withSockJS()
+    }
+
+    override fun configureMessageBroker(registry: MessageBrokerRegistry) {
+        registry.enableSimpleBroker("/topic")
+        registry.setApplicationDestinationPrefixes("/app")
+    }
+
+    override fun configureMessageConverters(messageConverters: MutableList<MessageConverter>): Boolean {
+        val converter = MappingJackson2MessageConverter()
+        converter.objectMapper = JacksonSupport.createDefaultMapper(rpcConnection.proxy)
+        messageConverters.add(converter)
+        return false
+    }
+}
@@ -7,7 +7,13 @@ app.config(['$qProvider', function ($qProvider) {
     $qProvider.errorOnUnhandledRejections(false);
 }]);
 
-app.controller('IdpController', function($http, $location, $uibModal) {
+// Flows are started in the background: follows one until it finishes and resolves with its final message.
+const followFlow = ($http, apiBaseURL, response) => response.status !== 202
+    ? response
+    : $http.get(apiBaseURL + "flows/" + response.data.id + "/result")
+        .then((result) => followFlow($http, apiBaseURL, result));
+
+app.controller('IdpController', function($http, $location, $uibModal, $scope) {
     const idpApp = this;
 
     const apiBaseURL = "/api/example/";
@@ -96,25 +102,71 @@ app.controller('IdpController', function($http, $location, $uibModal) {
 
                                modalClear.result.then(() => {}, () => {});
                            };
-    //Gets transactions to display them on screen
-    idpApp.getTransactions = () => $http.get(apiBaseURL + "transactions")
-        .then((response) => idpApp.transactions = Object.keys(response.data)
-            .map((key) => response.data[key].state.data)
-            .reverse());
-     //Gets transfers to display them on screen
-     idpApp.getTransfers = () => $http.get(apiBaseURL + "transfers")
-             .then((response) => idpApp.transfers = Object.keys(response.data)
-                 .map((key) => response.data[key].state.data)
-                 .reverse());
-       //Gets Cash statements to display them on screen
-       idpApp.getCash = () => $http.get(apiBaseURL + "cash")
-               .then((response) => idpApp.cash = Object.keys(response.data)
-                     .map((key) => response.data[key].state.data)
-                      .reverse());
-
-    idpApp.getTransactions();
-    idpApp.getTransfers();
-    idpApp.getCash();
+    // States on screen for each vault query, newest first, as loaded once and then kept current by vault deltas.
+    const views = {
+        transactions: { path: "transactions", topic: "/topic/vault/assets", states: [], pending: [] },
+        transfers: { path: "transfers", topic: "/topic/vault/transfers", states: [], pending: [] },
+        cash: { path: "cash", topic: "/topic/vault/cash", states: [], pending: [] }
+    };
+
+    const refKey = (ref) => typeof ref === "string" ? ref : ref.txhash + "(" + ref.index + ")";
+
+    // Drops the states a delta consumed and puts the ones it produced first.
+    const applyDelta = (states, delta) => {
+        const produced = delta.produced.slice().reverse();
+        const replaced = new Set(delta.consumed.concat(produced.map((stateAndRef) => refKey(stateAndRef.ref))));
+        return produced.concat(states.filter((stateAndRef) => !replaced.has(refKey(stateAndRef.ref))));
+    };
+
+    const show = (name) => idpApp[name] = views[name].states.map((stateAndRef) => stateAndRef.state.data);
+
+    // Loads the current states; deltas that arrive meanwhile are held back and applied on top.
+    const load = (name) => {
+        views[name].pending = views[name].pending || [];
+        return $http.get(apiBaseURL + views[name].path).then((response) => {
+            const view = views[name];
+            view.states = view.pending.reduce(applyDelta, response.data.states);
+            view.pending = null;
+            show(name);
+        });
+    };
+
+    //Gets transactions to display them on screen, newest first
+    idpApp.getTransactions = () => load("transactions");
+     //Gets transfers to display them on screen, newest first
+     idpApp.getTransfers = () => load("transfers");
+       //Gets Cash statements to display them on screen, newest first
+       idpApp.getCash = () => load("cash");
+
+    const loadAll = () => {
+        idpApp.getTransactions();
+        idpApp.getTransfers();
+        idpApp.getCash();
+    };
+
+    // Subscribes to vault deltas before the first load, so nothing recorded in between is missed. Without a
+    // connection the page still loads, it just will not update by itself.
+    const stomp = Stomp.over(new SockJS("/ws"));
+    stomp.debug = null;
+    stomp.connect({}, () => {
+        Object.keys(views).forEach((name) =>
+            stomp.subscribe(views[name].topic, (message) => $scope.$applyAsync(() => {
+                const view = views[name];
+                const delta = JSON.parse(message.body);
+                if (view.pending !== null) {
+                    view.pending.push(delta);
+                } else {
+                    view.states = applyDelta(view.states, delta);
+                    show(name);
+                }
+            })));
+        // The server lost the node for a while and missed updates: load the named topic's states again.
+        stomp.subscribe("/topic/vault/resync", (message) => $scope.$applyAsync(() => {
+            const topic = JSON.parse(message.body).topic;
+            Object.keys(views).filter((name) => views[name].topic === topic).forEach(load);
+        }));
+        loadAll();
+    }, loadAll);
 
 });
 
@@ -148,7 +200,7 @@ app.controller('ModalInstanceCtrl', function ($http, $location, $uibModalInstanc
                 };
 
                 // Create Transaction and handles success / fail responses.
-                $http.post(CREATE_TRANSACTIONS_PATH, createTransactionData, createTransactionHeaders).then(
+                $http.post(CREATE_TRANSACTIONS_PATH, createTransactionData, createTransactionHeaders).then((response) => followFlow($http, apiBaseURL, response)).then(
                     modalInstance.displayMessage,
                     modalInstance.displayMessage
                 );
@@ -212,7 +264,7 @@ app.controller('TransferCtrl', function ($http, $location, $uibModalInstance, $u
                                 };
 
                                 // Creates Transfer and handles success / fail responses.
-                                $http.post(CREATE_TRANSFER_PATH, createTransferData, createTransferHeaders).then(
+                                $http.post(CREATE_TRANSFER_PATH, createTransferData, createTransferHeaders).then((response) => followFlow($http, apiBaseURL, response)).then(
                                     modalTransfer.displayMessage,
                                     modalTransfer.displayMessage
                                 );
@@ -269,7 +321,7 @@ app.controller('ConfirmCtrl', function ($http, $location, $uibModalInstance, $ui
                                 };
 
                                 // Create Transaction and handles success / fail responses.
-                                $http.post(CREATE_CONFIRM_PATH, createConfirmData, createConfirmHeaders).then(
+                                $http.post(CREATE_CONFIRM_PATH, createConfirmData, createConfirmHeaders).then((response) => followFlow($http, apiBaseURL, response)).then(
                                     modalConfirm.displayMessage,
                                     modalConfirm.displayMessage
                                 );
@@ -331,7 +383,7 @@ app.controller('ModalIssueCashCtrl', function ($http, $location, $uibModalInstan
                                }
                        };
 
-                  $http.post(CREATE_ISSUE_PATH,createIssueData,createIssueHeaders).then(
+                  $http.post(CREATE_ISSUE_PATH,createIssueData,createIssueHeaders).then((response) => followFlow($http, apiBaseURL, response)).then(
                                                    modalIssueCash.displayMessage,
                                                    modalIssueCash.displayMessage
                                                 );
@@ -395,7 +447,7 @@ app.controller('ModalClearCtrl', function ($http, $location, $uibModalInstance,
                    };
 
                 // Create Transaction and handles success / fail responses.
-                 $http.post(CREATE_CLEAR_PATH, createClearData, createClearHeaders).then(
+                 $http.post(CREATE_CLEAR_PATH, createClearData, createClearHeaders).then((response) => followFlow($http, apiBaseURL, response)).then(
                              modalClear.displayMessage,
                              modalClear.displayMessage
                     );
@@ -0,0 +1,71 @@
+package com.template.cordapp.server
+
+import com.template.cordapp.server.BulkAssetUploader.Companion.firstUse
+import com.template.cordapp.server.BulkAssetUploader.Companion.row
+import com.template.cordapp.server.BulkAssetUploader.Companion.splitCsv
+import net.corda.finance.DOLLARS
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class BulkAssetUploaderTests {
+
+    @Test
+    fun `splits plain fields`() {
+        assertEquals(listOf("CUSIP1", "US BOND", "1000"), splitCsv("CUSIP1,US BOND,1000"))
+    }
+
+    @Test
+    fun `keeps empty fields`() {
+        assertEquals(listOf("", "US BOND", ""), splitCsv(",US BOND,"))
+    }
+
+    @Test
+    fun `keeps commas and escaped quotes inside quoted fields`() {
+        assertEquals(listOf("CUSIP1", "BOND, \"SERIES A\"", "1000"), splitCsv("CUSIP1,\"BOND, \"\"SERIES A\"\"\",1000"))
+    }
+
+    @Test
+    fun `rejects an unterminated quoted field`() {
+        assertFailsWith<IllegalArgumentException> { splitCsv("CUSIP1,\"US BOND,1000") }
+    }
+
+    @Test
+    fun `trims fields and reads the cost in dollars`() {
+        val parsed = row(7, " CUSIP1 ", " US BOND ", " 1000.50 ")
+        assertEquals(7, parsed.number)
+        assertEquals("CUSIP1", parsed.cusip)
+        assertEquals("US BOND", parsed.assetName)
+        assertEquals(1000.50.DOLLARS, parsed.purchaseCost)
+    }
+
+    @Test
+    fun `rejects a blank cusip or asset name`() {
+        assertEquals("Field 'cusip' must not be empty.",
+                assertFailsWith<BulkAssetUploader.RowException> { row(1, " ", "US BOND", "1000") }.message)
+        assertEquals("Field 'assetName' must not be empty.",
+                assertFailsWith<BulkAssetUploader.RowException> { row(1, "CUSIP1", null, "1000") }.message)
+    }
+
+    @Test
+    fun `rejects a cost that is missing, not a number or not positive`() {
+        for (cost in listOf(null, "", "ten")) {
+            assertEquals("Field 'purchaseCost' must be a number.",
+                    assertFailsWith<BulkAssetUploader.RowException> { row(1, "CUSIP1", "US BOND", cost) }.message)
+        }
+        for (cost in listOf("0", "-1")) {
+            assertEquals("Field 'purchaseCost' must be positive.",
+                    assertFailsWith<BulkAssetUploader.RowException> { row(1, "CUSIP1", "US BOND", cost) }.message)
+        }
+    }
+
+    @Test
+    fun `rejects a cusip repeated anywhere in the upload`() {
+        // Rows 1 and 600 land in different chunks, so only the upload-wide check can catch the repeat.
+        val seen = HashSet<String>()
+        firstUse(row(1, "CUSIP1", "US BOND", "1000"), seen)
+        for (number in 2 until 600) firstUse(row(number, "CUSIP$number", "US BOND", "1000"), seen)
+        assertEquals("Duplicate CUSIP within the upload.",
+                assertFailsWith<BulkAssetUploader.RowException> { firstUse(row(600, " CUSIP1 ", "US BOND", "1000"), seen) }.message)
+    }
+}
@@ -0,0 +1,188 @@
+package com.template.cordapp.benchmarks;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.cordapp.buyer.flows.ConfirmAssetTransferRequestInitiatorFlow;
+import com.template.cordapp.buyer.flows.CreateAssetTransferRequestResponderFlow;
+import com.template.cordapp.clearinghouse.flows.AssetSettlementInitiatorFlow;
+import com.template.cordapp.clearinghouse.flows.ConfirmAssetTransferRequestResponderFlow;
+import com.template.cordapp.common.flows.ReissueAssetFlow;
+import com.template.cordapp.flows.AbstractAssetSettlementFlow;
+import com.template.cordapp.seller.flows.ConfirmAssetTransferRequestHandlerFlow;
+import com.template.cordapp.seller.flows.CreateAssetStateFlow;
+import com.template.cordapp.seller.flows.CreateAssetTransferRequestInitiatorFlow;
+import com.template.cordapp.state.AssetTransfer;
+import kotlin.collections.CollectionsKt;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import net.corda.core.flows.InitiatedBy;
+import net.corda.core.identity.Party;
+import net.corda.core.node.NetworkParameters;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.KotlinUtilsKt;
+import net.corda.core.utilities.OpaqueBytes;
+import net.corda.finance.Currencies;
+import net.corda.finance.flows.CashIssueFlow;
+import net.corda.testing.internal.InternalTestUtilsKt;
+import net.corda.testing.node.InMemoryMessagingNetwork;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time [AssetSettlementInitiatorFlow] takes to sell an asset to a new buyer through a new clearing house, neither of
+ * which has seen the asset before, as the asset's history grows; with [snipped] the history is first cut by
+ * [ReissueAssetFlow]. Each invocation settles an asset once, so the history is rebuilt before every one of them. Run
+ * with `./gradlew :cordapp-benchmarks:jmh -Pjmh.include=AssetBackchainBenchmark`.
+ *
+ * The history is built by settling the asset back and forth between two traders, so every trader here answers a
+ * settlement as either seller or buyer, as [SettlementRole] says.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssetBackchainBenchmark {
+
+    @Param({"1", "10", "25", "50"})
+    public int chainLength;
+
+    @Param({"false", "true"})
+    public boolean snipped;
+
+    private MockNetwork network;
+    private StartedMockNode issuer;
+    private StartedMockNode counterparty;
+    private StartedMockNode custodian;
+    private int assets;
+
+    private StartedMockNode settlementCustodian;
+    private UniqueIdentifier settlementLinearId;
+
+    @Setup(Level.Trial)
+    public void startNetwork() {
+        network = new MockNetwork(ImmutableList.of("com.template.cordapp"), (MockNetworkParameters) null, false, true, (InMemoryMessagingNetwork.ServicePeerAllocationStrategy) null, (List) null, (NetworkParameters) null);
+        issuer = trader();
+        counterparty = trader();
+        issuer.registerInitiatedFlow(ReissueAssetFlow.Responder.class);
+        custodian = clearingHouse();
+    }
+
+    /**
+     * Gives a new asset a history of [chainLength] transactions, optionally re-issues it, and then has its owner agree a
+     * sale to a fresh buyer through a fresh clearing house, leaving only the settlement itself for the benchmark.
+     */
+    @Setup(Level.Invocation)
+    public void buildHistory() {
+        // Let the previous invocation's settlement reach every vault first.
+        network.waitQuiescent();
+        String cusip = "BENCH" + assets++;
+        KotlinUtilsKt.getOrThrow(issuer.startFlow(new CreateAssetStateFlow.Initiator(cusip, "BENCH BOND", Currencies.DOLLARS(1000))), (Duration) null);
+
+        StartedMockNode owner = issuer;
+        StartedMockNode other = counterparty;
+        for (int hop = 1; hop < chainLength; hop++) {
+            settle(custodian, request(owner, other, custodian, cusip));
+            StartedMockNode previous = owner;
+            owner = other;
+            other = previous;
+        }
+
+        StartedMockNode seller = owner;
+        if (snipped) {
+            seller = trader();
+            StartedMockNode firstCustodian = clearingHouse();
+            settle(firstCustodian, request(owner, seller, firstCustodian, cusip));
+            KotlinUtilsKt.getOrThrow(seller.startFlow(new ReissueAssetFlow.Initiator(cusip)), (Duration) null);
+            network.waitQuiescent();
+        }
+
+        settlementCustodian = clearingHouse();
+        settlementLinearId = request(seller, trader(), settlementCustodian, cusip);
+    }
+
+    @Benchmark
+    public SignedTransaction settle() {
+        return KotlinUtilsKt.getOrThrow(settlementCustodian.startFlow(new AssetSettlementInitiatorFlow(settlementLinearId)), (Duration) null);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopNetwork() {
+        network.stopNodes();
+    }
+
+    /** A node that can sell and buy assets, funded with enough cash for any run. */
+    private StartedMockNode trader() {
+        StartedMockNode node = network.createNode();
+        node.registerInitiatedFlow(CreateAssetTransferRequestResponderFlow.class);
+        node.registerInitiatedFlow(ConfirmAssetTransferRequestHandlerFlow.class);
+        node.registerInitiatedFlow(SettlementRole.class);
+        Party notary = CollectionsKt.first(node.getServices().getNetworkMapCache().getNotaryIdentities());
+        CashIssueFlow.IssueRequest issueRequest = new CashIssueFlow.IssueRequest(Currencies.DOLLARS(1_000_000), OpaqueBytes.Companion.of(new byte[]{0}), notary);
+        KotlinUtilsKt.getOrThrow(node.startFlow(new CashIssueFlow(issueRequest)), (Duration) null);
+        return node;
+    }
+
+    private StartedMockNode clearingHouse() {
+        StartedMockNode node = network.createNode();
+        node.registerInitiatedFlow(ConfirmAssetTransferRequestResponderFlow.class);
+        return node;
+    }
+
+    /** Requests and confirms the sale of [cusip] from [seller] to [buyer] through [custodian]; returns the transfer. */
+    private UniqueIdentifier request(StartedMockNode seller, StartedMockNode buyer, StartedMockNode custodian, String cusip) {
+        Party sellerParty = InternalTestUtilsKt.chooseIdentity(seller.getInfo());
+        Party buyerParty = InternalTestUtilsKt.chooseIdentity(buyer.getInfo());
+        SettlementRole.SELLERS.add(sellerParty);
+        SettlementRole.SELLERS.remove(buyerParty);
+
+        SignedTransaction requestTx = KotlinUtilsKt.getOrThrow(seller.startFlow(new CreateAssetTransferRequestInitiatorFlow(cusip, buyerParty)), (Duration) null);
+        AssetTransfer assetTransfer = CollectionsKt.single(requestTx.getTx().outputsOfType(AssetTransfer.class));
+        KotlinUtilsKt.getOrThrow(buyer.startFlow(new ConfirmAssetTransferRequestInitiatorFlow(assetTransfer.getLinearId(),
+                InternalTestUtilsKt.chooseIdentity(custodian.getInfo()))), (Duration) null);
+        network.waitQuiescent();
+        return assetTransfer.getLinearId();
+    }
+
+    private SignedTransaction settle(StartedMockNode custodian, UniqueIdentifier linearId) {
+        SignedTransaction settleTx = KotlinUtilsKt.getOrThrow(custodian.startFlow(new AssetSettlementInitiatorFlow(linearId)), (Duration) null);
+        network.waitQuiescent();
+        return settleTx;
+    }
+
+    /**
+     * Answers a settlement with the seller's or the buyer's responder, depending on the side this node is on for the
+     * trade being settled.
+     */
+    @InitiatedBy(AbstractAssetSettlementFlow.class)
+    public static final class SettlementRole extends FlowLogic<SignedTransaction> {
+
+        static final Set<Party> SELLERS = ConcurrentHashMap.newKeySet();
+
+        private final FlowSession otherSideSession;
+
+        public SettlementRole(FlowSession otherSideSession) {
+            this.otherSideSession = otherSideSession;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            if (SELLERS.contains(getOurIdentity())) {
+                return subFlow(new com.template.cordapp.seller.flows.AssetSettlementResponderFlow(otherSideSession));
+            }
+            return subFlow(new com.template.cordapp.buyer.flows.AssetSettlementResponderFlow(otherSideSession));
+        }
+    }
+}
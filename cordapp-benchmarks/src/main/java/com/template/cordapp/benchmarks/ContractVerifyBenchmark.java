@@ -0,0 +1,77 @@
+package com.template.cordapp.benchmarks;
+
+import com.synechron.cordapp.contract.AssetContract;
+import com.template.cordapp.contract.AssetTransferContract;
+import com.template.cordapp.testing.LedgerFixture;
+import net.corda.core.contracts.Contract;
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verify throughput of [AssetContract] and [AssetTransferContract] for every command, as the number of legs in the
+ * transaction grows. Run with `./gradlew :cordapp-benchmarks:jmh`, which adds the GC profiler for allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContractVerifyBenchmark {
+
+    @Param({"AssetCreate", "AssetTransfer", "AssetExit", "AssetReissue",
+            "TransferCreateRequest", "TransferConfirmRequest", "TransferSettleRequest"})
+    public String command;
+
+    @Param({"1", "10", "100", "1000"})
+    public int legs;
+
+    private Contract contract;
+    private LedgerTransaction tx;
+
+    @Setup
+    public void setUp() {
+        LedgerFixture ledger = new LedgerFixture();
+        switch (command) {
+            case "AssetCreate":
+                contract = new AssetContract();
+                tx = ledger.assetCreate(legs);
+                break;
+            case "AssetTransfer":
+                contract = new AssetContract();
+                tx = ledger.assetTransfer(legs);
+                break;
+            case "AssetExit":
+                contract = new AssetContract();
+                tx = ledger.assetExit(legs);
+                break;
+            case "AssetReissue":
+                contract = new AssetContract();
+                tx = ledger.assetReissue(legs);
+                break;
+            case "TransferCreateRequest":
+                contract = new AssetTransferContract();
+                tx = ledger.transferCreateRequest(legs);
+                break;
+            case "TransferConfirmRequest":
+                contract = new AssetTransferContract();
+                tx = ledger.transferConfirmRequest(legs);
+                break;
+            case "TransferSettleRequest":
+                contract = new AssetTransferContract();
+                tx = ledger.transferSettleRequest(legs);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+        // Fail the run up front rather than measure a transaction that does not verify.
+        contract.verify(tx);
+    }
+
+    @Benchmark
+    public void verify() {
+        contract.verify(tx);
+    }
+}
@@ -0,0 +1,121 @@
+package com.template.cordapp.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.template.cordapp.services.WellKnownIdentityCacheService;
+import kotlin.Pair;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.PartyAndCertificate;
+import net.corda.core.node.NetworkParameters;
+import net.corda.nodeapi.internal.KeyStoreConfigHelpersKt;
+import net.corda.nodeapi.internal.crypto.CertificateAndKeyPair;
+import net.corda.nodeapi.internal.crypto.CertificateType;
+import net.corda.nodeapi.internal.crypto.X509Utilities;
+import net.corda.testing.node.InMemoryMessagingNetwork;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of registering a counterparty's confidential identity as [IdentitySyncFlow.Receive] does, through
+ * [WellKnownIdentityCacheService.verifyAndRegisterIdentity]. With [verification] `twice` each path is first checked
+ * against the trust root on its own, as `Receive` used to, and then again as it is registered; with `once` it is only
+ * checked as it is registered, as `Receive` does now. Run with
+ * `./gradlew :cordapp-benchmarks:jmh -Pjmh.include=IdentityVerificationBenchmark`.
+ *
+ * Identities are issued up front and registered in turn. After the first [IDENTITIES] registrations each key is already
+ * known, which changes nothing here: the identity service checks the path either way.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdentityVerificationBenchmark {
+
+    private static final int IDENTITIES = 1024;
+    private static final CordaX500Name COUNTERPARTY = CordaX500Name.parse("O=Counterparty,L=London,C=GB");
+    private static final Pair<Duration, Duration> WINDOW = new Pair<>(Duration.ZERO, Duration.ofDays(365));
+
+    @Param({"twice", "once"})
+    public String verification;
+
+    private MockNetwork network;
+    private StartedMockNode node;
+    private WellKnownIdentityCacheService identityCache;
+    private PartyAndCertificate[] identities;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (!verification.equals("twice") && !verification.equals("once")) {
+            throw new IllegalArgumentException("Unknown verification " + verification);
+        }
+        network = new MockNetwork(ImmutableList.of("com.template.cordapp"), (MockNetworkParameters) null, false, true, (InMemoryMessagingNetwork.ServicePeerAllocationStrategy) null, (List) null, (NetworkParameters) null);
+        node = network.createNode();
+        identityCache = node.getServices().cordaService(WellKnownIdentityCacheService.class);
+
+        // One counterparty's chain down to its legal identity, as the dev network issues it.
+        CertificateAndKeyPair intermediate = KeyStoreConfigHelpersKt.getDEV_INTERMEDIATE_CA();
+        CertificateAndKeyPair nodeCa = issue(CertificateType.NODE_CA, intermediate);
+        CertificateAndKeyPair legal = issue(CertificateType.LEGAL_IDENTITY, nodeCa);
+        identities = new PartyAndCertificate[IDENTITIES];
+        for (int i = 0; i < IDENTITIES; i++) {
+            identities[i] = identity(issue(CertificateType.CONFIDENTIAL_LEGAL_IDENTITY, legal), legal, nodeCa, intermediate);
+        }
+        // Fail the run up front rather than measure identities the node rejects.
+        register();
+    }
+
+    @Benchmark
+    public void register() {
+        PartyAndCertificate identity = identities[next];
+        next = (next + 1) % IDENTITIES;
+        node.transaction(() -> {
+            try {
+                if (verification.equals("twice")) {
+                    identity.verify(node.getServices().getIdentityService().getTrustAnchor());
+                }
+                identityCache.verifyAndRegisterIdentity(identity);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void stopNetwork() {
+        network.stopNodes();
+    }
+
+    private static CertificateAndKeyPair issue(CertificateType type, CertificateAndKeyPair issuer) {
+        KeyPair keyPair = Crypto.generateKeyPair(Crypto.ECDSA_SECP256R1_SHA256);
+        X509Certificate certificate = X509Utilities.createCertificate(type, issuer.getCertificate(), issuer.getKeyPair(),
+                COUNTERPARTY.getX500Principal(), keyPair.getPublic(), WINDOW, null);
+        return new CertificateAndKeyPair(certificate, keyPair);
+    }
+
+    private static PartyAndCertificate identity(CertificateAndKeyPair... chain) {
+        try {
+            X509Certificate[] certificates = new X509Certificate[chain.length];
+            for (int i = 0; i < chain.length; i++) {
+                certificates[i] = chain[i].getCertificate();
+            }
+            return new PartyAndCertificate(CertificateFactory.getInstance("X.509").generateCertPath(Arrays.asList(certificates)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.template.cordapp.benchmarks;
+
+import com.template.cordapp.clearinghouse.netting.MultilateralNettingEngine;
+import com.template.cordapp.clearinghouse.netting.MultilateralNettingEngine.NettedPayment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time [MultilateralNettingEngine] takes to fold open transfers into net positions and compute a plan, as the number
+ * of transfers grows. Run with `./gradlew :cordapp-benchmarks:jmh -Pjmh.include=NettingBenchmark`.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NettingBenchmark {
+
+    private static final Currency[] CURRENCIES = {Currency.getInstance("USD"), Currency.getInstance("EUR"), Currency.getInstance("GBP")};
+
+    @Param({"10000", "100000", "1000000"})
+    public int transfers;
+
+    @Param({"500"})
+    public int parties;
+
+    private String[] payers;
+    private String[] payees;
+    private Currency[] currencies;
+    private long[] quantities;
+    private MultilateralNettingEngine<String> netted;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(transfers);
+        String[] names = new String[parties];
+        for (int i = 0; i < parties; i++) names[i] = "O=Party" + i + ",L=London,C=GB";
+
+        payers = new String[transfers];
+        payees = new String[transfers];
+        currencies = new Currency[transfers];
+        quantities = new long[transfers];
+        for (int i = 0; i < transfers; i++) {
+            payers[i] = names[random.nextInt(parties)];
+            payees[i] = names[random.nextInt(parties)];
+            currencies[i] = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            quantities[i] = 1 + random.nextInt(10_000_000);
+        }
+        netted = net();
+    }
+
+    /** Folding every transfer into net positions. */
+    @Benchmark
+    public MultilateralNettingEngine<String> add() {
+        return net();
+    }
+
+    /** Planning the payments for positions already netted. */
+    @Benchmark
+    public List<NettedPayment<String>> plan() {
+        return netted.plan();
+    }
+
+    private MultilateralNettingEngine<String> net() {
+        MultilateralNettingEngine<String> engine = new MultilateralNettingEngine<>();
+        for (int i = 0; i < transfers; i++) {
+            engine.add(payers[i], payees[i], currencies[i], quantities[i]);
+        }
+        return engine;
+    }
+}
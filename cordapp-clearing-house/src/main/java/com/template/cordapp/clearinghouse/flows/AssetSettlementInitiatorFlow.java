@@ -3,40 +3,45 @@ package com.template.cordapp.clearinghouse.flows;
 import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableSet;
 import com.template.cordapp.common.flows.IdentitySyncFlow;
-import com.template.cordapp.common.flows.ReceiveTransactionUnVerifiedFlow;
+import com.template.cordapp.common.flows.LegProposal;
+import com.template.cordapp.common.flows.ReceiveLegProposalFlow;
+import com.template.cordapp.common.flows.SettlementRequest;
+import com.template.cordapp.common.services.NotarySelectionService;
 import com.template.cordapp.contract.AssetTransferContract;
 import com.template.cordapp.flows.AbstractAssetSettlementFlow;
 
 import java.security.PublicKey;
-import java.security.SignatureException;
 import java.time.Duration;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
+import java.time.Instant;
+import java.util.*;
 
 import com.template.cordapp.state.Asset;
 
 import com.template.cordapp.state.AssetTransfer;
 import kotlin.collections.CollectionsKt;
 import net.corda.core.contracts.Command;
-import net.corda.core.contracts.CommandWithParties;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
 import net.corda.core.contracts.TransactionState;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
-import net.corda.core.transactions.LedgerTransaction;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import org.jetbrains.annotations.NotNull;
 
+import static com.template.cordapp.state.RequestStatus.PENDING;
 import static com.template.cordapp.state.RequestStatus.TRANSFERRED;
 
 /**
  * Create new transaction to process the received transaction to settle [AssetTransfer] request.
  * It accepts the [AssetTransfer] state's [linearId] as input to start this flow and collects the [Cash] and [Asset] input and output states from counter-party.
+ * Several [linearId]s between the same seller and buyer may be given to settle them in one transaction with a single
+ * netted cash leg.
  * For demo:
  * 1. Clearing House set requestStatus to [RequestStatus.TRANSFERRED] if everything is okay
  * (i.e. by offline verifying the data of [AssetTransfer.asset] is valid).
@@ -48,7 +53,7 @@ import static com.template.cordapp.state.RequestStatus.TRANSFERRED;
 @StartableByRPC
 public final class AssetSettlementInitiatorFlow extends AbstractAssetSettlementFlow {
 
-    private final UniqueIdentifier linearId;
+    private final List<UniqueIdentifier> linearIds;
 
     private final ProgressTracker.Step INITIALISING = new ProgressTracker.Step("Performing initial steps");
     private final ProgressTracker.Step BUILDING = new ProgressTracker.Step("Building and verifying transaction");
@@ -93,135 +98,113 @@ public final class AssetSettlementInitiatorFlow extends AbstractAssetSettlementF
 
 
     public AssetSettlementInitiatorFlow(UniqueIdentifier linearId) {
-        this.linearId = linearId;
+        this(Collections.singletonList(linearId));
+    }
+
+    /**
+     * Netted settlement of several PENDING transfers between the same seller and buyer. All asset legs and one cash
+     * leg for the total purchase cost are assembled into a single transaction.
+     */
+    public AssetSettlementInitiatorFlow(List<UniqueIdentifier> linearIds) {
+        this.linearIds = linearIds;
     }
 
     @Suspendable
     @NotNull
     public SignedTransaction call() throws FlowException {
 
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        if (linearIds.isEmpty()) {
+            throw new FlowException("At least one transfer must be given for settlement.");
+        }
 
         progressTracker.setCurrentStep(INITIALISING);
 
-        StateAndRef<AssetTransfer> input = this.loadState(this.getServiceHub(), this.linearId, AssetTransfer.class);
-
-        List participants = input.getState().getData().getParticipants();
-
-        Asset asset = input.getState().getData().getAsset();
-
-        AbstractParty securitySeller = input.getState().getData().getSecuritySeller();
-        AbstractParty securityBuyer = input.getState().getData().getSecurityBuyer();
-
-        AssetTransfer assetTransfer = new AssetTransfer(asset,
-                securitySeller,
-                securityBuyer,
-                this.getOurIdentity(),
-                TRANSFERRED,
-                participants,
-                linearId);
-
-
-        List<PublicKey> requiredSigners = Arrays.asList(
-                assetTransfer.getSecurityBuyer().getOwningKey(),
-                assetTransfer.getSecuritySeller().getOwningKey(),
-                getOurIdentity().getOwningKey());
-
-        final Command<AssetTransferContract.Commands.SettleRequest> command = new Command(
-                new AssetTransferContract.Commands.SettleRequest(), requiredSigners);
+        List<StateAndRef<AssetTransfer>> inputs = new ArrayList<>(linearIds.size());
+        for (UniqueIdentifier linearId : linearIds) {
+            inputs.add(this.loadState(this.getServiceHub(), linearId, AssetTransfer.class));
+        }
 
+        AssetTransfer first = inputs.get(0).getState().getData();
+        Party notary = inputs.get(0).getState().getNotary();
+        Party seller = this.resolveIdentity(this.getServiceHub(), first.getSecuritySeller());
+        Party buyer = this.resolveIdentity(this.getServiceHub(), first.getSecurityBuyer());
+        Currency currency = first.getAsset().getPurchaseCost().getToken();
+        Set<String> cusips = new HashSet<>();
+
+        for (StateAndRef<AssetTransfer> input : inputs) {
+            AssetTransfer transfer = input.getState().getData();
+            if (transfer.getStatus() != PENDING) {
+                throw new FlowException("Transfer " + transfer.getLinearId() + " is not pending settlement.");
+            }
+            if (!input.getState().getNotary().equals(notary)) {
+                throw new FlowException("Transfers to settle together must share one notary.");
+            }
+            if (!cusips.add(transfer.getAsset().getCusip())) {
+                throw new FlowException("Transfers to settle together must be for different CUSIPs.");
+            }
+            if (!transfer.getAsset().getPurchaseCost().getToken().equals(currency)) {
+                throw new FlowException("Transfers to settle together must share one currency.");
+            }
+            if (!this.resolveIdentity(this.getServiceHub(), transfer.getSecuritySeller()).equals(seller)
+                    || !this.resolveIdentity(this.getServiceHub(), transfer.getSecurityBuyer()).equals(buyer)) {
+                throw new FlowException("Transfers to settle together must be between the same seller and buyer.");
+            }
+        }
 
         progressTracker.setCurrentStep(BUILDING);
         TransactionBuilder txBuilder = new TransactionBuilder(notary)
-                .addInputState(input)
-                .addOutputState(assetTransfer, AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID)
-                .addCommand(command)
                 .setTimeWindow(getServiceHub().getClock().instant(), Duration.ofSeconds(60));
 
-        progressTracker.setCurrentStep(COLLECT_STATES);
-
-        SignedTransaction tempPtx = getServiceHub().signInitialTransaction(txBuilder);
-
-        FlowSession securitySellerSession = this.initiateFlow(this.resolveIdentity(this.getServiceHub(), assetTransfer.getSecuritySeller()));
-        subFlow(new SendTransactionFlow(securitySellerSession, tempPtx));
-
-        SignedTransaction assetPtx = subFlow((new ReceiveTransactionUnVerifiedFlow(securitySellerSession)));
-
-        FlowSession securityBuyerSession = this.initiateFlow(this.resolveIdentity(this.getServiceHub(), assetTransfer.getSecurityBuyer()));
-        subFlow((new SendTransactionFlow(securityBuyerSession, tempPtx)));
-
-        securityBuyerSession.send(txBuilder.getLockId());
-
-        this.subFlow(((new net.corda.confidential.IdentitySyncFlow.Receive(securityBuyerSession))));
-
-        SignedTransaction cashPtx = this.subFlow((new ReceiveTransactionUnVerifiedFlow(securityBuyerSession)));
-
-        LedgerTransaction assetLtx = null;
-        try {
-            assetLtx = assetPtx.toLedgerTransaction(this.getServiceHub(), false);
-        } catch (SignatureException e) {
-            e.printStackTrace();
+        Set<PublicKey> requiredSigners = new LinkedHashSet<>();
+        for (StateAndRef<AssetTransfer> input : inputs) {
+            AssetTransfer transfer = input.getState().getData();
+            AssetTransfer assetTransfer = new AssetTransfer(transfer.getAsset(),
+                    transfer.getSecuritySeller(),
+                    transfer.getSecurityBuyer(),
+                    this.getOurIdentity(),
+                    TRANSFERRED,
+                    transfer.getParticipants(),
+                    transfer.getLinearId());
+
+            txBuilder.addInputState(input)
+                    .addOutputState(assetTransfer, AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID);
+
+            requiredSigners.add(assetTransfer.getSecurityBuyer().getOwningKey());
+            requiredSigners.add(assetTransfer.getSecuritySeller().getOwningKey());
         }
+        requiredSigners.add(getOurIdentity().getOwningKey());
 
-        Iterable assetInputs = assetLtx.getInputs();
-        Iterable assetOutputs = assetLtx.getOutputs();
-        Iterable assetCommands = assetLtx.getCommands();
-        Iterator inputsIterator = assetInputs.iterator();
-        Iterator outputsIterator = assetOutputs.iterator();
-        Iterator commandsIterator = assetCommands.iterator();
-
-        Object element;
-        while (inputsIterator.hasNext()) {
-            element = inputsIterator.next();
-            StateAndRef it = (StateAndRef) element;
-            txBuilder.addInputState(it);
-        }
+        final Command<AssetTransferContract.Commands.SettleRequest> command = new Command<>(
+                new AssetTransferContract.Commands.SettleRequest(), new ArrayList<>(requiredSigners));
+        txBuilder.addCommand(command);
 
-        while (outputsIterator.hasNext()) {
-            element = outputsIterator.next();
-            TransactionState it = (TransactionState) element;
-            txBuilder.addOutputState(it);
-        }
+        progressTracker.setCurrentStep(COLLECT_STATES);
 
-        while (commandsIterator.hasNext()) {
-            element = commandsIterator.next();
-            CommandWithParties it = (CommandWithParties) element;
-            txBuilder.addCommand(new Command(it.getValue(), it.getSigners()));
+        // Counterparties are participants in every transfer, so naming the inputs is enough for them to check the
+        // transfers against their own vaults and build their legs.
+        List<StateRef> transferRefs = new ArrayList<>(inputs.size());
+        for (StateAndRef<AssetTransfer> input : inputs) {
+            transferRefs.add(input.getRef());
         }
+        SettlementRequest request = new SettlementRequest(transferRefs);
 
-        LedgerTransaction cashLtx = null;
-
-        try {
-            cashLtx = cashPtx.toLedgerTransaction(this.getServiceHub(), false);
-        } catch (SignatureException e) {
-            e.printStackTrace();
-        }
+        // Hand the request to both counterparties before waiting on either leg, so that the buyer selects cash while
+        // the seller builds the asset leg. The buyer goes first as cash selection is the slower of the two.
+        FlowSession securityBuyerSession = this.initiateFlow(buyer);
+        securityBuyerSession.send(request);
+        securityBuyerSession.send(txBuilder.getLockId());
 
+        FlowSession securitySellerSession = this.initiateFlow(seller);
+        securitySellerSession.send(request);
 
-        Iterable cashInputs = cashLtx.getInputs();
-        Iterable cashOutputs = cashLtx.getOutputs();
-        Iterable cashCommands = cashLtx.getCommands();
-        Iterator inputsIteratorc = cashInputs.iterator();
-        Iterator outputsIteratorc = cashOutputs.iterator();
-        Iterator commandsIteratorc = cashCommands.iterator();
+        this.subFlow(new IdentitySyncFlow.Receive(securityBuyerSession));
 
-        while (inputsIteratorc.hasNext()) {
-            element = inputsIteratorc.next();
-            StateAndRef it = (StateAndRef) element;
-            txBuilder.addInputState(it);
-        }
+        LegProposal cashLeg = this.subFlow(new ReceiveLegProposalFlow(securityBuyerSession));
 
-        while (outputsIteratorc.hasNext()) {
-            element = outputsIteratorc.next();
-            TransactionState it = (TransactionState) element;
-            txBuilder.addOutputState(it);
-        }
+        LegProposal assetLeg = this.subFlow(new ReceiveLegProposalFlow(securitySellerSession));
 
-        while (commandsIteratorc.hasNext()) {
-            element = commandsIteratorc.next();
-            CommandWithParties it = (CommandWithParties) element;
-            txBuilder.addCommand(new Command(it.getValue(), it.getSigners()));
-        }
+        addLeg(txBuilder, assetLeg);
+        addLeg(txBuilder, cashLeg);
 
         ImmutableSet<FlowSession> otherPartySession = ImmutableSet.of(securityBuyerSession, securitySellerSession);
 
@@ -235,12 +218,31 @@ public final class AssetSettlementInitiatorFlow extends AbstractAssetSettlementF
 
         progressTracker.setCurrentStep(COLLECTING);
         final SignedTransaction fullySignedTx = subFlow(
-                new CollectSignaturesFlow(signedTx, otherPartySession, CollectionsKt.listOf(assetTransfer.getClearingHouse().getOwningKey()), CollectSignaturesFlow.tracker()));
+                new CollectSignaturesFlow(signedTx, otherPartySession, CollectionsKt.listOf(getOurIdentity().getOwningKey()), CollectSignaturesFlow.tracker()));
 
         progressTracker.setCurrentStep(FINALISING);
-        return subFlow(new FinalityFlow(fullySignedTx, FINALISING.childProgressTracker()));
+        Instant finalityStarted = getServiceHub().getClock().instant();
+        SignedTransaction finalTxn = subFlow(new FinalityFlow(fullySignedTx, FINALISING.childProgressTracker()));
+        getServiceHub().cordaService(NotarySelectionService.class).recordFinality(notary, finalityStarted);
+        return finalTxn;
 
     }
+
+    /**
+     * Adds a counterparty's leg to [txBuilder]. The leg's inputs were resolved by [ReceiveLegProposalFlow], so they can
+     * be loaded from our transaction storage.
+     */
+    private void addLeg(TransactionBuilder txBuilder, LegProposal leg) throws FlowException {
+        for (StateRef ref : leg.getInputs()) {
+            txBuilder.addInputState(new StateAndRef<>(getServiceHub().loadState(ref), ref));
+        }
+        for (TransactionState<ContractState> output : leg.getOutputs()) {
+            txBuilder.addOutputState(output);
+        }
+        for (Command<CommandData> command : leg.getCommands()) {
+            txBuilder.addCommand(command);
+        }
+    }
 }
 
 
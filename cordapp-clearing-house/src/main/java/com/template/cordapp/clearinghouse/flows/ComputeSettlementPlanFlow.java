@@ -0,0 +1,101 @@
+package com.template.cordapp.clearinghouse.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.cordapp.clearinghouse.netting.MultilateralNettingEngine;
+import com.template.cordapp.clearinghouse.netting.SettlementPlan;
+import com.template.cordapp.services.WellKnownIdentityCacheService;
+import com.template.cordapp.state.AssetTransfer;
+import com.template.cordapp.utils.UtilsKt;
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.utilities.ProgressTracker;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+import static com.template.cordapp.state.RequestStatus.PENDING;
+
+/**
+ * Scans every PENDING [AssetTransfer] held by the clearing house and nets them multilaterally. Each transfer is an
+ * obligation of the buyer to pay [Asset.purchaseCost] to the seller; the returned [SettlementPlan] lists each party's
+ * net position per currency and the cash movements that settle them, so a buyer only has to spend its net obligation
+ * instead of paying every trade gross. [MultilateralNettingEngine] matches debtors and creditors greedily, which keeps
+ * the movements to at most one fewer than the parties in each currency but does not always find the smallest set.
+ */
+@StartableByRPC
+public final class ComputeSettlementPlanFlow extends FlowLogic<SettlementPlan> {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final ProgressTracker.Step SCANNING = new ProgressTracker.Step("Scanning pending transfers");
+    private final ProgressTracker.Step NETTING = new ProgressTracker.Step("Computing net positions and payments");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            SCANNING,
+            NETTING
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @NotNull
+    @Override
+    public SettlementPlan call() throws FlowException {
+
+        progressTracker.setCurrentStep(SCANNING);
+
+        MultilateralNettingEngine<Party> engine = new MultilateralNettingEngine<>();
+        Map<AbstractParty, Party> wellKnown = new HashMap<>();
+        List<UniqueIdentifier> transfers = new ArrayList<>();
+
+        int pageNumber = 1;
+        long seen = 0;
+        Vault.Page<AssetTransfer> page;
+        do {
+            page = UtilsKt.getTransfersForClearingHouse(getServiceHub(), PENDING, getOurIdentity(), new PageSpecification(pageNumber++, PAGE_SIZE));
+            for (StateAndRef<AssetTransfer> stateAndRef : page.getStates()) {
+                AssetTransfer transfer = stateAndRef.getState().getData();
+                Amount<Currency> cost = transfer.getAsset().getPurchaseCost();
+                engine.add(wellKnownParty(wellKnown, transfer.getSecurityBuyer()),
+                        wellKnownParty(wellKnown, transfer.getSecuritySeller()),
+                        cost.getToken(),
+                        cost.getQuantity());
+                transfers.add(transfer.getLinearId());
+            }
+            seen += page.getStates().size();
+        } while (seen < page.getTotalStatesAvailable() && !page.getStates().isEmpty());
+
+        progressTracker.setCurrentStep(NETTING);
+
+        Map<Party, Map<Currency, Long>> netPositions = new HashMap<>();
+        for (Map.Entry<Currency, Map<Party, Long>> currency : engine.netPositions().entrySet()) {
+            for (Map.Entry<Party, Long> position : currency.getValue().entrySet()) {
+                netPositions.computeIfAbsent(position.getKey(), p -> new HashMap<>())
+                        .put(currency.getKey(), position.getValue());
+            }
+        }
+
+        List<SettlementPlan.Payment> payments = new ArrayList<>();
+        for (MultilateralNettingEngine.NettedPayment<Party> payment : engine.plan()) {
+            payments.add(new SettlementPlan.Payment(payment.getPayer(), payment.getPayee(),
+                    new Amount<>(payment.getQuantity(), payment.getCurrency())));
+        }
+
+        return new SettlementPlan(transfers, netPositions, payments);
+    }
+
+    private Party wellKnownParty(Map<AbstractParty, Party> wellKnown, AbstractParty party) {
+        return wellKnown.computeIfAbsent(party, p -> getServiceHub().cordaService(WellKnownIdentityCacheService.class).requireWellKnownPartyFromAnonymous(p));
+    }
+}
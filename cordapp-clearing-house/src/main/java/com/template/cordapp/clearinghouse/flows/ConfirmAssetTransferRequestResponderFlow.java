@@ -2,7 +2,7 @@ package com.template.cordapp.clearinghouse.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.cordapp.flows.AbstractConfirmAssetTransferRequestFlow;
-import net.corda.confidential.IdentitySyncFlow;
+import com.template.cordapp.common.flows.IdentitySyncFlow;
 import net.corda.core.flows.*;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.utilities.ProgressTracker;
@@ -0,0 +1,142 @@
+package com.template.cordapp.clearinghouse.netting;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Multilateral netting of gross obligations. Every obligation `payer owes payee quantity` is folded into a net
+ * position per party and currency; [plan] then produces the cash movements needed to bring every position back to
+ * zero. Debtors and creditors are matched largest first, which settles a cycle with at most (parties - 1) payments per
+ * currency and usually far fewer. The match is greedy and does not always find the fewest payments, which is NP-hard.
+ *
+ * The engine is independent of Corda types so that it can be benchmarked without a node; [P] is normally [Party].
+ * Instances are not thread safe.
+ */
+public final class MultilateralNettingEngine<P> {
+
+    private final Map<Currency, Map<P, Long>> positions = new HashMap<>();
+    private long obligationCount = 0;
+
+    /**
+     * Records that [payer] owes [payee] [quantity] of [currency], in the currency's smallest unit.
+     */
+    public void add(@NotNull P payer, @NotNull P payee, @NotNull Currency currency, long quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Obligation quantity must not be negative.");
+        }
+        obligationCount++;
+        if (quantity == 0 || payer.equals(payee)) {
+            return;
+        }
+        Map<P, Long> byParty = positions.computeIfAbsent(currency, c -> new HashMap<>());
+        byParty.merge(payer, -quantity, Math::addExact);
+        byParty.merge(payee, quantity, Math::addExact);
+    }
+
+    public long getObligationCount() {
+        return obligationCount;
+    }
+
+    /**
+     * Net position of each party per currency: positive means the party is owed cash, negative means it must pay.
+     * Parties that net to zero are left out.
+     */
+    @NotNull
+    public Map<Currency, Map<P, Long>> netPositions() {
+        Map<Currency, Map<P, Long>> result = new HashMap<>();
+        for (Map.Entry<Currency, Map<P, Long>> currency : positions.entrySet()) {
+            Map<P, Long> nonZero = new HashMap<>();
+            for (Map.Entry<P, Long> position : currency.getValue().entrySet()) {
+                if (position.getValue() != 0L) {
+                    nonZero.put(position.getKey(), position.getValue());
+                }
+            }
+            if (!nonZero.isEmpty()) {
+                result.put(currency.getKey(), nonZero);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cash movements that settle every recorded obligation.
+     */
+    @NotNull
+    public List<NettedPayment<P>> plan() {
+        List<NettedPayment<P>> payments = new ArrayList<>();
+        for (Map.Entry<Currency, Map<P, Long>> currency : netPositions().entrySet()) {
+            planCurrency(currency.getKey(), currency.getValue(), payments);
+        }
+        return payments;
+    }
+
+    private void planCurrency(Currency currency, Map<P, Long> byParty, List<NettedPayment<P>> payments) {
+        List<Map.Entry<P, Long>> debtors = new ArrayList<>();
+        List<Map.Entry<P, Long>> creditors = new ArrayList<>();
+        for (Map.Entry<P, Long> position : byParty.entrySet()) {
+            if (position.getValue() < 0) {
+                debtors.add(new AbstractMap.SimpleEntry<>(position.getKey(), -position.getValue()));
+            } else {
+                creditors.add(new AbstractMap.SimpleEntry<>(position.getKey(), position.getValue()));
+            }
+        }
+        Comparator<Map.Entry<P, Long>> largestFirst = (a, b) -> Long.compare(b.getValue(), a.getValue());
+        debtors.sort(largestFirst);
+        creditors.sort(largestFirst);
+
+        int d = 0;
+        int c = 0;
+        while (d < debtors.size() && c < creditors.size()) {
+            Map.Entry<P, Long> debtor = debtors.get(d);
+            Map.Entry<P, Long> creditor = creditors.get(c);
+            long amount = Math.min(debtor.getValue(), creditor.getValue());
+            payments.add(new NettedPayment<>(debtor.getKey(), creditor.getKey(), currency, amount));
+            debtor.setValue(debtor.getValue() - amount);
+            creditor.setValue(creditor.getValue() - amount);
+            if (debtor.getValue() == 0L) d++;
+            if (creditor.getValue() == 0L) c++;
+        }
+    }
+
+    /**
+     * One cash movement of a netting plan.
+     */
+    public static final class NettedPayment<P> {
+        private final P payer;
+        private final P payee;
+        private final Currency currency;
+        private final long quantity;
+
+        public NettedPayment(@NotNull P payer, @NotNull P payee, @NotNull Currency currency, long quantity) {
+            this.payer = payer;
+            this.payee = payee;
+            this.currency = currency;
+            this.quantity = quantity;
+        }
+
+        @NotNull
+        public P getPayer() {
+            return payer;
+        }
+
+        @NotNull
+        public P getPayee() {
+            return payee;
+        }
+
+        @NotNull
+        public Currency getCurrency() {
+            return currency;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        @Override
+        public String toString() {
+            return payer + " pays " + payee + " " + quantity + " " + currency;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.template.cordapp.clearinghouse.netting;
+
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of netting every PENDING [AssetTransfer] the clearing house knows about: the transfers covered, each party's
+ * net cash position per currency and the cash movements that settle the whole cycle.
+ */
+@CordaSerializable
+public final class SettlementPlan {
+
+    @NotNull
+    private final List<UniqueIdentifier> transfers;
+    @NotNull
+    private final Map<Party, Map<Currency, Long>> netPositions;
+    @NotNull
+    private final List<Payment> payments;
+
+    public SettlementPlan(@NotNull List<UniqueIdentifier> transfers,
+                          @NotNull Map<Party, Map<Currency, Long>> netPositions,
+                          @NotNull List<Payment> payments) {
+        this.transfers = transfers;
+        this.netPositions = netPositions;
+        this.payments = payments;
+    }
+
+    @NotNull
+    public List<UniqueIdentifier> getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * Net position per party and currency, in the currency's smallest unit. Positive quantities are owed to the party,
+     * negative quantities are owed by it.
+     */
+    @NotNull
+    public Map<Party, Map<Currency, Long>> getNetPositions() {
+        return netPositions;
+    }
+
+    @NotNull
+    public List<Payment> getPayments() {
+        return payments;
+    }
+
+    @CordaSerializable
+    public static final class Payment {
+        @NotNull
+        private final Party payer;
+        @NotNull
+        private final Party payee;
+        @NotNull
+        private final Amount<Currency> amount;
+
+        public Payment(@NotNull Party payer, @NotNull Party payee, @NotNull Amount<Currency> amount) {
+            this.payer = payer;
+            this.payee = payee;
+            this.amount = amount;
+        }
+
+        @NotNull
+        public Party getPayer() {
+            return payer;
+        }
+
+        @NotNull
+        public Party getPayee() {
+            return payee;
+        }
+
+        @NotNull
+        public Amount<Currency> getAmount() {
+            return amount;
+        }
+
+        @Override
+        public String toString() {
+            return payer.getName() + " pays " + payee.getName() + " " + amount;
+        }
+    }
+}
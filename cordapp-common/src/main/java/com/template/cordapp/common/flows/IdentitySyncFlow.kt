@@ -1,14 +1,16 @@
 package com.template.cordapp.common.flows
 
 import co.paralleluniverse.fibers.Suspendable
+import com.template.cordapp.services.WellKnownIdentityCacheService
 import net.corda.core.contracts.ContractState
 import net.corda.core.flows.FlowLogic
 import net.corda.core.flows.FlowSession
-import net.corda.core.identity.AbstractParty
+import net.corda.core.identity.AnonymousParty
 import net.corda.core.identity.PartyAndCertificate
 import net.corda.core.transactions.WireTransaction
 import net.corda.core.utilities.ProgressTracker
 import net.corda.core.utilities.unwrap
+import java.security.PublicKey
 
 object IdentitySyncFlow {
     /**
@@ -19,7 +21,10 @@ object IdentitySyncFlow {
      * party. This flow would send a copy of the confidential identity path to the recipient, enabling them to verify that
      * identity.
      *
-     * @return a mapping of well known identities to the confidential identities used in the transaction.
+     * The sync is a delta protocol: each counterparty is first sent only the owning keys of the confidential identities
+     * in the transaction and answers with the positions of the keys it cannot resolve. Certificates are then sent for
+     * those alone, and not at all when the counterparty already knows every identity. All sessions are served in one
+     * fan-out round rather than one after another.
      */
     class Send(val otherSideSessions: Set<FlowSession>,
                val tx: WireTransaction,
@@ -35,29 +40,32 @@ object IdentitySyncFlow {
         @Suspendable
         override fun call() {
             progressTracker.currentStep = SYNCING_IDENTITIES
-            val states: List<ContractState> = (tx.inputs.map { serviceHub.loadState(it) }.requireNoNulls().map { it.data } + tx.outputs.map { it.data })
+            val states: List<ContractState> = serviceHub.loadStates(tx.inputs.toSet()).map { it.state.data } + tx.outputs.map { it.data }
 
-            val identities: Set<AbstractParty> = states.flatMap { it.participants }.toSet()
-            // Filter participants down to the set of those not in the network map (are not well known)
-            val confidentialIdentities = identities
-                    .filter { serviceHub.networkMapCache.getNodesByLegalIdentityKey(it.owningKey).isEmpty() }
-                    .toList()
+            // Filter participants down to the keys of those not in the network map (are not well known)
+            val confidentialKeys: List<PublicKey> = states.flatMap { it.participants }
+                    .map { it.owningKey }
+                    .distinct()
+                    .filter { serviceHub.networkMapCache.getNodesByLegalIdentityKey(it).isEmpty() }
 
-            val identityCertificates: Map<AbstractParty, PartyAndCertificate?> = identities
-                    .map { Pair(it, serviceHub.identityService.certificateFromKey(it.owningKey)) }.toMap()
+            otherSideSessions.forEach { it.send(confidentialKeys) }
+            if (confidentialKeys.isEmpty()) return
 
-            otherSideSessions.forEach { otherSideSession ->
-                val requestedIdentities: List<AbstractParty> = otherSideSession.sendAndReceive<List<AbstractParty>>(confidentialIdentities).unwrap { req ->
-                    require(req.all { it in identityCertificates.keys }) { "${otherSideSession.counterparty} requested a confidential identity not part of transaction: ${tx.id}" }
+            val requests: Map<FlowSession, List<Int>> = otherSideSessions.associate { otherSideSession ->
+                otherSideSession to otherSideSession.receive<List<Int>>().unwrap { req ->
+                    require(req.all { it in confidentialKeys.indices }) { "${otherSideSession.counterparty} requested a confidential identity not part of transaction: ${tx.id}" }
                     req
                 }
+            }
 
-                val sendIdentities: List<PartyAndCertificate?> = requestedIdentities.map {
-                    val identityCertificate = identityCertificates[it]
-                    if (identityCertificate != null)
-                        identityCertificate
-                    else
-                        throw IllegalStateException("Counterparty requested a confidential identity for which we do not have the certificate path: ${tx.id}")
+            val certificates = HashMap<Int, PartyAndCertificate>()
+            requests.forEach { (otherSideSession, requested) ->
+                if (requested.isEmpty()) return@forEach
+                val sendIdentities: List<PartyAndCertificate> = requested.map { index ->
+                    certificates.getOrPut(index) {
+                        serviceHub.identityService.certificateFromKey(confidentialKeys[index])
+                                ?: throw IllegalStateException("Counterparty requested a confidential identity for which we do not have the certificate path: ${tx.id}")
+                    }
                 }
                 otherSideSession.send(sendIdentities)
             }
@@ -70,31 +78,31 @@ object IdentitySyncFlow {
      * we do not yet know about.
      */
     class Receive(val otherSideSession: FlowSession) : FlowLogic<Unit>() {
-        /*
-        companion object {
-            object RECEIVING_IDENTITIES : ProgressTracker.Step("Receiving confidential identities")
-            object RECEIVING_CERTIFICATES : ProgressTracker.Step("Receiving certificates for unknown identities")
-        }*/
-
-        //override val progressTracker: ProgressTracker = ProgressTracker(RECEIVING_IDENTITIES, RECEIVING_CERTIFICATES)
 
         @Suspendable
         override fun call() {
-            //progressTracker.currentStep = RECEIVING_IDENTITIES
-            val allIdentities = otherSideSession.receive<List<AbstractParty>>().unwrap { it }
-            val unknownIdentities = allIdentities.filter { serviceHub.identityService.wellKnownPartyFromAnonymous(it) == null }
+            val identityCache = serviceHub.cordaService(WellKnownIdentityCacheService::class.java)
+            val confidentialKeys = otherSideSession.receive<List<PublicKey>>().unwrap { it }
+            if (confidentialKeys.isEmpty()) return
 
-            //progressTracker.currentStep = RECEIVING_CERTIFICATES
-            val missingIdentities = otherSideSession.sendAndReceive<List<PartyAndCertificate>>(unknownIdentities)
+            val unknownIndices = confidentialKeys.indices.filter { identityCache.wellKnownPartyFromAnonymous(AnonymousParty(confidentialKeys[it])) == null }
+            otherSideSession.send(unknownIndices)
+            if (unknownIndices.isEmpty()) return
 
-            // Batch verify the identities we've received, so we know they're all correct before we start storing them in
-            // the identity service
+            val missingIdentities = otherSideSession.receive<List<PartyAndCertificate>>()
+
+            // Check the reply matches what we asked for before touching the identity service. Each path is then checked
+            // once, in full, as it is registered: PKIX validation against the trust root and Corda's certificate roles.
+            // Nothing is committed until the flow next suspends, so one bad identity leaves none of them registered.
             missingIdentities.unwrap { identities ->
-                identities.forEach { it.verify(serviceHub.identityService.trustAnchor) }
+                require(identities.size == unknownIndices.size) { "${otherSideSession.counterparty} sent ${identities.size} identities for ${unknownIndices.size} requested" }
+                identities.forEachIndexed { i, identity ->
+                    require(identity.owningKey == confidentialKeys[unknownIndices[i]]) { "${otherSideSession.counterparty} sent an identity that was not requested" }
+                }
                 identities
             }.forEach { identity ->
                 // Store the received confidential identities in the identity service so we have a record of which well known identity they map to.
-                serviceHub.identityService.verifyAndRegisterIdentity(identity)
+                identityCache.verifyAndRegisterIdentity(identity)
             }
         }
     }
@@ -0,0 +1,60 @@
+package com.template.cordapp.common.flows
+
+import co.paralleluniverse.fibers.Suspendable
+import net.corda.core.contracts.Command
+import net.corda.core.contracts.CommandData
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.StateRef
+import net.corda.core.contracts.TransactionState
+import net.corda.core.flows.FlowException
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.FlowSession
+import net.corda.core.flows.ReceiveStateAndRefFlow
+import net.corda.core.flows.SendStateAndRefFlow
+import net.corda.core.serialization.CordaSerializable
+import net.corda.core.transactions.TransactionBuilder
+import net.corda.core.utilities.unwrap
+
+/**
+ * One party's contribution to a transaction that its counterparty assembles: the refs of the states it spends, the
+ * states it creates and the commands over them. Unlike a [net.corda.core.transactions.SignedTransaction] it carries no
+ * signatures, notary, attachments or Merkle structure, and the assembling party resolves the inputs' history once.
+ */
+@CordaSerializable
+data class LegProposal(val inputs: List<StateRef>,
+                       val outputs: List<TransactionState<ContractState>>,
+                       val commands: List<Command<CommandData>>) {
+    companion object {
+        @JvmStatic
+        @Suppress("UNCHECKED_CAST")
+        fun of(builder: TransactionBuilder) = LegProposal(builder.inputStates(),
+                builder.outputStates() as List<TransactionState<ContractState>>,
+                builder.commands() as List<Command<CommandData>>)
+    }
+}
+
+/**
+ * Sends a [LegProposal], first serving its inputs and their transaction history to [ReceiveLegProposalFlow].
+ */
+class SendLegProposalFlow(private val otherSideSession: FlowSession, private val leg: LegProposal) : FlowLogic<Unit>() {
+    @Suspendable
+    override fun call() {
+        subFlow(SendStateAndRefFlow(otherSideSession, leg.inputs.map { serviceHub.toStateAndRef<ContractState>(it) }))
+        otherSideSession.send(leg)
+    }
+}
+
+/**
+ * Receives a [LegProposal] after resolving the transactions its inputs come from, so that they can be loaded with
+ * [net.corda.core.node.ServiceHub.loadState] and added to a builder.
+ */
+class ReceiveLegProposalFlow(private val otherSideSession: FlowSession) : FlowLogic<LegProposal>() {
+    @Suspendable
+    override fun call(): LegProposal {
+        val resolved = subFlow(ReceiveStateAndRefFlow<ContractState>(otherSideSession)).map { it.ref }
+        return otherSideSession.receive<LegProposal>().unwrap { leg ->
+            if (leg.inputs != resolved) throw FlowException("${otherSideSession.counterparty} proposed inputs it did not resolve.")
+            leg
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.template.cordapp.common.flows
+
+import co.paralleluniverse.fibers.Suspendable
+import net.corda.confidential.SwapIdentitiesFlow
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.StartableByService
+import net.corda.core.identity.AnonymousParty
+import net.corda.core.identity.Party
+
+/**
+ * Swaps [count] fresh confidential identities with [counterparty] for
+ * [com.template.cordapp.common.services.ConfidentialIdentityPoolService], which pools the returned pairs.
+ */
+@StartableByService
+class RefillIdentityPoolFlow(private val counterparty: Party, private val count: Int) : FlowLogic<List<LinkedHashMap<Party, AnonymousParty>>>() {
+
+    @Suspendable
+    override fun call(): List<LinkedHashMap<Party, AnonymousParty>> {
+        val swapped = ArrayList<LinkedHashMap<Party, AnonymousParty>>(count)
+        for (i in 0 until count) {
+            swapped.add(subFlow(SwapIdentitiesFlow(counterparty)))
+        }
+        return swapped
+    }
+}
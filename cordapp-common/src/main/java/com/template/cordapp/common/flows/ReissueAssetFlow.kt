@@ -0,0 +1,189 @@
+package com.template.cordapp.common.flows
+
+import co.paralleluniverse.fibers.Suspendable
+import com.synechron.cordapp.contract.AssetContract
+import com.template.cordapp.common.services.AssetReissuancePolicyService
+import com.template.cordapp.common.services.NotarySelectionService
+import com.template.cordapp.state.Asset
+import com.template.cordapp.utils.getAssetByCusip
+import net.corda.core.contracts.requireThat
+import net.corda.core.crypto.SecureHash
+import net.corda.core.flows.*
+import net.corda.core.identity.Party
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.TransactionBuilder
+import net.corda.core.utilities.ProgressTracker
+import java.security.PublicKey
+import java.time.Duration
+
+/**
+ * Cuts the transaction history of an [Asset] so that later buyers do not have to resolve and verify every earlier
+ * trade of it. The owner builds both the exit of the asset and its re-issue: an identical state to the same owner in a
+ * transaction with no inputs that names the exit. The issuer checks and signs both in one exchange, before anything is
+ * notarised. Only then does the owner finalise the exit, followed by the re-issue. Once the exit has committed, nothing
+ * is left for the issuer to do, and the re-issue needs no notary, as it has neither inputs nor a time window. So an
+ * asset is never left exited with no replacement. The re-issue is all a later counterparty has to resolve.
+ */
+object ReissueAssetFlow {
+
+    /**
+     * Run by the owner of the [Asset] with [cusip]. Returns the re-issue transaction.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    @StartableByService
+    class Initiator(private val cusip: String) : FlowLogic<SignedTransaction>() {
+
+        companion object {
+            object BUILDING : ProgressTracker.Step("Building and signing exit and re-issue transactions")
+            object SYNCING : ProgressTracker.Step("Syncing owner identity with issuer") {
+                override fun childProgressTracker() = IdentitySyncFlow.Send.tracker()
+            }
+            object COLLECTING_EXIT : ProgressTracker.Step("Collecting issuer signature on exit") {
+                override fun childProgressTracker() = CollectSignaturesFlow.tracker()
+            }
+            object COLLECTING_REISSUE : ProgressTracker.Step("Collecting issuer signature on re-issue") {
+                override fun childProgressTracker() = CollectSignaturesFlow.tracker()
+            }
+            object FINALISING_EXIT : ProgressTracker.Step("Finalising exit transaction") {
+                override fun childProgressTracker() = FinalityFlow.tracker()
+            }
+            object FINALISING_REISSUE : ProgressTracker.Step("Finalising re-issue transaction") {
+                override fun childProgressTracker() = FinalityFlow.tracker()
+            }
+
+            fun tracker() = ProgressTracker(BUILDING, SYNCING, COLLECTING_EXIT, COLLECTING_REISSUE, FINALISING_EXIT, FINALISING_REISSUE)
+        }
+
+        override val progressTracker = tracker()
+
+        @Suspendable
+        override fun call(): SignedTransaction {
+            progressTracker.currentStep = BUILDING
+            val assetStateAndRef = serviceHub.getAssetByCusip(cusip)
+            val asset = assetStateAndRef.state.data
+            val notary = assetStateAndRef.state.notary
+            val ownerKey = asset.owner.owningKey
+            if (serviceHub.keyManagementService.filterMyKeys(listOf(ownerKey)).none()) {
+                throw FlowException("Asset $cusip is not owned by us.")
+            }
+            val issuer = asset.issuer ?: throw FlowException("Asset $cusip has no recorded issuer, so it cannot be re-issued.")
+            val exitBuilder = TransactionBuilder(notary)
+                    .addInputState(assetStateAndRef)
+                    .addCommand(AssetContract.Commands.Exit(), listOf(ownerKey, issuer.owningKey).distinct())
+                    .setTimeWindow(serviceHub.clock.instant(), Duration.ofSeconds(60))
+            exitBuilder.verify(serviceHub)
+            val ownerSignedExitTx = serviceHub.signInitialTransaction(exitBuilder, ownerKey)
+
+            // The exit's id is fixed now, so the re-issue that names it can be agreed before the exit is notarised.
+            val reissueBuilder = reissueBuilder(notary, ownerSignedExitTx.id, listOf(asset))
+            reissueBuilder.verify(serviceHub)
+            val ownerSignedReissueTx = serviceHub.signInitialTransaction(reissueBuilder, ownerKey)
+
+            val fullySignedExitTx: SignedTransaction
+            val fullySignedReissueTx: SignedTransaction
+            val recipients: Set<Party>
+            if (issuer == ourIdentity) {
+                // We both own and issued it, so there is nobody to ask.
+                fullySignedExitTx = addOurSignature(ownerSignedExitTx, ownerKey)
+                fullySignedReissueTx = addOurSignature(ownerSignedReissueTx, ownerKey)
+                recipients = emptySet()
+            } else {
+                // The issuer is asked to sign our confidential key's transactions, so it must be able to resolve it to us.
+                progressTracker.currentStep = SYNCING
+                val issuerSession = initiateFlow(issuer)
+                subFlow(IdentitySyncFlow.Send(setOf(issuerSession), exitBuilder.toWireTransaction(serviceHub), SYNCING.childProgressTracker()))
+
+                progressTracker.currentStep = COLLECTING_EXIT
+                fullySignedExitTx = subFlow(CollectSignaturesFlow(ownerSignedExitTx, listOf(issuerSession), listOf(ownerKey),
+                        COLLECTING_EXIT.childProgressTracker()))
+                progressTracker.currentStep = COLLECTING_REISSUE
+                fullySignedReissueTx = subFlow(CollectSignaturesFlow(ownerSignedReissueTx, listOf(issuerSession), listOf(ownerKey),
+                        COLLECTING_REISSUE.childProgressTracker()))
+                recipients = setOf(issuer)
+            }
+
+            // The issuer has done its part, so from here on only our own node can stop the re-issue being recorded.
+            progressTracker.currentStep = FINALISING_EXIT
+            finalise(fullySignedExitTx, recipients, FINALISING_EXIT.childProgressTracker())
+            progressTracker.currentStep = FINALISING_REISSUE
+            return finalise(fullySignedReissueTx, recipients, FINALISING_REISSUE.childProgressTracker())
+        }
+
+        /** Signs [stx] with our legal identity too, unless [ownerKey] already is it. */
+        private fun addOurSignature(stx: SignedTransaction, ownerKey: PublicKey): SignedTransaction {
+            return if (ownerKey == ourIdentity.owningKey) stx else serviceHub.addSignature(stx, ourIdentity.owningKey)
+        }
+    }
+
+    /**
+     * Run by the issuer. Signs the exit of assets it issued, then the re-issue of exactly those assets to the same
+     * owners, in the same exchange. It has nothing more to do once both are signed, so it cannot fail the owner after
+     * the exit has been notarised.
+     */
+    @InitiatedBy(Initiator::class)
+    class Responder(private val ownerSession: FlowSession) : FlowLogic<Unit>() {
+
+        @Suspendable
+        override fun call() {
+            subFlow(IdentitySyncFlow.Receive(ownerSession))
+
+            val signedExitTx = subFlow(object : SignTransactionFlow(ownerSession) {
+                override fun checkTransaction(stx: SignedTransaction) = requireThat {
+                    val ltx = stx.toLedgerTransaction(serviceHub, false)
+                    "Must be an Asset exit." using (ltx.commandsOfType<AssetContract.Commands.Exit>().size == 1)
+                    "Must only exit Assets issued by us." using (ltx.inputsOfType<Asset>().all { it.issuer == ourIdentity })
+                }
+            })
+
+            val exited = signedExitTx.toLedgerTransaction(serviceHub, false).inputsOfType<Asset>()
+            subFlow(object : SignTransactionFlow(ownerSession) {
+                override fun checkTransaction(stx: SignedTransaction) = checkReissue(stx, signedExitTx, exited)
+            })
+        }
+    }
+
+    /** A re-issue of [exited], the [Asset]s consumed by exit [exitTxId], signed by their issuers and owners. */
+    private fun reissueBuilder(notary: Party, exitTxId: SecureHash, exited: List<Asset>): TransactionBuilder {
+        val signers = exited.flatMap { listOfNotNull(it.issuer?.owningKey, it.owner.owningKey) }.distinct()
+        // No time window: with no inputs either, the re-issue needs no notary and cannot expire once signed.
+        val reissueBuilder = TransactionBuilder(notary).addCommand(AssetContract.Commands.Reissue(exitTxId), signers)
+        exited.forEach { reissueBuilder.addOutputState(it, AssetContract.ASSET_CONTRACT_ID) }
+        return reissueBuilder
+    }
+
+    /** The issuer's check of a re-issue: it must put back exactly the [exited] assets, name [exitTx] and need no notary. */
+    private fun checkReissue(stx: SignedTransaction, exitTx: SignedTransaction, exited: List<Asset>) = requireThat {
+        val commands = stx.tx.commands.map { it.value }
+        "Must be a single Asset re-issue." using (commands.size == 1 && commands.single() is AssetContract.Commands.Reissue)
+        "Must re-issue the exit we signed." using ((commands.single() as AssetContract.Commands.Reissue).exitTxId == exitTx.id)
+        "Must re-issue exactly the Assets exited." using (stx.tx.outputsOfType<Asset>() == exited && stx.tx.outputs.size == exited.size)
+        "Must not consume anything." using (stx.tx.inputs.isEmpty())
+        "Must not need notarising." using (stx.tx.timeWindow == null)
+        "Must use the exit's notary." using (stx.notary == exitTx.notary)
+    }
+
+    @Suspendable
+    private fun FlowLogic<*>.finalise(stx: SignedTransaction, extraRecipients: Set<Party>, tracker: ProgressTracker): SignedTransaction {
+        val finalityStarted = serviceHub.clock.instant()
+        val finalTx = subFlow(FinalityFlow(stx, extraRecipients, tracker))
+        // A re-issue is only recorded, so its finality says nothing about the notary's latency.
+        if (stx.inputs.isNotEmpty() || stx.tx.timeWindow != null) {
+            serviceHub.cordaService(NotarySelectionService::class.java).recordFinality(stx.notary!!, finalityStarted)
+        }
+        return finalTx
+    }
+}
+
+/**
+ * Sets the [AssetReissuancePolicyService] threshold on this node: assets we receive with a history deeper than
+ * [maxChainDepth] transactions are re-issued automatically. Zero or less turns automatic re-issuance off.
+ */
+@StartableByRPC
+class SetReissuanceChainDepthFlow(private val maxChainDepth: Int) : FlowLogic<Unit>() {
+    @Suspendable
+    override fun call() {
+        val policyService = serviceHub.cordaService(AssetReissuancePolicyService::class.java)
+        policyService.policy = if (maxChainDepth > 0) AssetReissuancePolicyService.ChainDepthPolicy(maxChainDepth) else null
+    }
+}
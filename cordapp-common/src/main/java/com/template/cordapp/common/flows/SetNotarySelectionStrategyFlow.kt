@@ -0,0 +1,18 @@
+package com.template.cordapp.common.flows
+
+import co.paralleluniverse.fibers.Suspendable
+import com.template.cordapp.common.services.NotarySelectionService
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.StartableByRPC
+
+/**
+ * Sets how [NotarySelectionService] picks the notary for new transactions on this node, by one of the names
+ * [NotarySelectionService.strategyNamed] knows. Measured notary latencies are kept across changes.
+ */
+@StartableByRPC
+class SetNotarySelectionStrategyFlow(private val strategy: String) : FlowLogic<Unit>() {
+    @Suspendable
+    override fun call() {
+        serviceHub.cordaService(NotarySelectionService::class.java).strategy = NotarySelectionService.strategyNamed(strategy)
+    }
+}
@@ -0,0 +1,71 @@
+package com.template.cordapp.common.flows
+
+import co.paralleluniverse.fibers.Suspendable
+import com.template.cordapp.services.WellKnownIdentityCacheService
+import com.template.cordapp.state.AssetTransfer
+import com.template.cordapp.state.RequestStatus
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.contracts.StateRef
+import net.corda.core.flows.FlowException
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.FlowSession
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.queryBy
+import net.corda.core.node.services.vault.PageSpecification
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.serialization.CordaSerializable
+import net.corda.core.utilities.unwrap
+
+/**
+ * The [AssetTransfer]s a clearing house asks the seller and buyer to settle, named by the exact state versions its
+ * settlement transaction spends.
+ */
+@CordaSerializable
+data class SettlementRequest(val transfers: List<StateRef>)
+
+/**
+ * Receives a [SettlementRequest] and checks it against our own vault before we put any asset or cash into the
+ * settlement. Every transfer must be unconsumed here, [RequestStatus.PENDING], cleared by the counterparty and name us
+ * as its [side]; all of them must share one notary. Returns the transfers in the order requested, or throws
+ * [FlowException] if any check fails.
+ */
+class ReceiveSettlementRequestFlow(private val otherSideSession: FlowSession,
+                                   private val side: Side) : FlowLogic<List<StateAndRef<AssetTransfer>>>() {
+
+    @CordaSerializable
+    enum class Side { SECURITY_SELLER, SECURITY_BUYER }
+
+    @Suspendable
+    override fun call(): List<StateAndRef<AssetTransfer>> {
+        val refs = otherSideSession.receive<SettlementRequest>().unwrap { it.transfers }
+        if (refs.isEmpty()) throw FlowException("Settlement does not contain any AssetTransfer.")
+        if (refs.toSet().size != refs.size) throw FlowException("Settlement names a transfer more than once.")
+
+        val criteria = QueryCriteria.VaultQueryCriteria(status = Vault.StateStatus.UNCONSUMED, stateRefs = refs)
+        val found = serviceHub.vaultService.queryBy<AssetTransfer>(criteria, PageSpecification(1, refs.size)).states
+                .associateBy { it.ref }
+
+        val identities = serviceHub.cordaService(WellKnownIdentityCacheService::class.java)
+        val transfers = refs.map { ref ->
+            val input = found[ref] ?: throw FlowException("Transfer $ref is not an unconsumed AssetTransfer in our vault.")
+            val transfer = input.state.data
+            if (transfer.status != RequestStatus.PENDING) {
+                throw FlowException("Transfer ${transfer.linearId} is not pending settlement.")
+            }
+            val clearingHouse = transfer.clearingHouse?.let { identities.wellKnownPartyFromAnonymous(it) }
+            if (clearingHouse != otherSideSession.counterparty) {
+                throw FlowException("Transfer ${transfer.linearId} is not cleared by ${otherSideSession.counterparty.name}.")
+            }
+            val ours = if (side == Side.SECURITY_SELLER) transfer.securitySeller else transfer.securityBuyer
+            if (identities.wellKnownPartyFromAnonymous(ours) != ourIdentity) {
+                throw FlowException("Transfer ${transfer.linearId} does not name us as ${side.name.toLowerCase().replace('_', ' ')}.")
+            }
+            input
+        }
+
+        if (transfers.map { it.state.notary }.toSet().size != 1) {
+            throw FlowException("Transfers to settle together must share one notary.")
+        }
+        return transfers
+    }
+}
@@ -0,0 +1,135 @@
+package com.template.cordapp.common.services
+
+import com.template.cordapp.common.exception.TooManyStatesFoundException
+import com.template.cordapp.schema.AssetSchemaV1
+import com.template.cordapp.state.Asset
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.contracts.StateRef
+import net.corda.core.node.AppServiceHub
+import net.corda.core.node.services.CordaService
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.queryBy
+import net.corda.core.node.services.vault.Builder.`in`
+import net.corda.core.node.services.vault.DEFAULT_PAGE_NUM
+import net.corda.core.node.services.vault.PageSpecification
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.serialization.SingletonSerializeAsToken
+
+/**
+ * Node-local index of CUSIP to the unconsumed [Asset]s carrying it, so that flows resolve assets without a vault query.
+ *
+ * The index follows the vault's [updates] observable, which only reports transactions once they have committed:
+ * produced assets are added, consumed ones removed. It is warmed from the vault the first time a flow uses it, because
+ * vault queries need the database transaction a flow provides. A lookup that misses still falls back to the vault and
+ * caches the answer.
+ *
+ * CUSIPs are only unique within one issue transaction, so the index keeps every unconsumed asset per CUSIP and a lookup
+ * that finds more than one fails with [TooManyStatesFoundException], as the vault query it replaces did.
+ */
+@CordaService
+class AssetCusipIndexService(private val services: AppServiceHub) : SingletonSerializeAsToken() {
+
+    private companion object {
+        const val WARM_UP_PAGE_SIZE = 1000
+        const val RECENTLY_CONSUMED_CAPACITY = 10_000
+    }
+
+    // Guarded by itself. Each CUSIP maps to its unconsumed assets by ref; more than one entry is a collision.
+    private val index = HashMap<String, LinkedHashMap<StateRef, StateAndRef<Asset>>>()
+
+    // Refs consumed recently, so that a vault read racing with the consuming update does not put them back.
+    private val recentlyConsumed = object : LinkedHashMap<StateRef, Boolean>() {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<StateRef, Boolean>) = size > RECENTLY_CONSUMED_CAPACITY
+    }
+
+    @Volatile
+    private var warm = false
+
+    init {
+        services.vaultService.updates.subscribe { update -> onUpdate(update) }
+    }
+
+    private fun onUpdate(update: Vault.Update<*>) {
+        synchronized(index) {
+            update.consumed.forEach { consumed ->
+                val data = consumed.state.data
+                if (data is Asset) {
+                    recentlyConsumed[consumed.ref] = true
+                    val assets = index[data.cusip] ?: return@forEach
+                    assets.remove(consumed.ref)
+                    if (assets.isEmpty()) index.remove(data.cusip)
+                }
+            }
+            update.produced.forEach { produced ->
+                if (produced.state.data is Asset) {
+                    @Suppress("UNCHECKED_CAST")
+                    add(produced as StateAndRef<Asset>)
+                }
+            }
+        }
+    }
+
+    /** Must be called holding the [index] lock. */
+    private fun add(asset: StateAndRef<Asset>) {
+        if (asset.ref in recentlyConsumed) return
+        index.getOrPut(asset.state.data.cusip) { LinkedHashMap() }[asset.ref] = asset
+    }
+
+    /**
+     * Must be called from within a flow (or another open database transaction).
+     */
+    private fun warmUp() {
+        if (warm) return
+        synchronized(this) {
+            if (warm) return
+            var pageNumber = DEFAULT_PAGE_NUM
+            var seen = 0L
+            do {
+                val page = services.vaultService.queryBy<Asset>(QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED),
+                        PageSpecification(pageNumber++, WARM_UP_PAGE_SIZE))
+                synchronized(index) { page.states.forEach { add(it) } }
+                seen += page.states.size
+            } while (seen < page.totalStatesAvailable && page.states.isNotEmpty())
+            warm = true
+        }
+    }
+
+    /**
+     * The unconsumed [Asset] with [cusip], or null if the vault holds none. Fails with [TooManyStatesFoundException] if
+     * it holds more than one.
+     */
+    fun lookup(cusip: String): StateAndRef<Asset>? = lookup(listOf(cusip))[cusip]
+
+    /**
+     * The unconsumed [Asset] for each of [cusips] found in this vault. Cached entries are served from memory and all
+     * misses are resolved with a single vault query. Fails with [TooManyStatesFoundException] if any CUSIP is carried
+     * by more than one unconsumed asset.
+     */
+    fun lookup(cusips: Collection<String>): Map<String, StateAndRef<Asset>> {
+        warmUp()
+        val found = HashMap<String, StateAndRef<Asset>>(cusips.size)
+        val misses = ArrayList<String>()
+        synchronized(index) {
+            cusips.forEach { cusip ->
+                val cached = index[cusip]
+                if (cached != null) found[cusip] = single(cusip, cached.values) else misses.add(cusip)
+            }
+        }
+        if (misses.isNotEmpty()) {
+            // One more row than CUSIPs asked for: if any CUSIP is duplicated, the page is sure to show it.
+            val criteria = QueryCriteria.VaultCustomQueryCriteria(AssetSchemaV1.PersistentAsset::cusip.`in`(misses))
+            val states = services.vaultService.queryBy<Asset>(criteria, PageSpecification(DEFAULT_PAGE_NUM, misses.size + 1)).states
+            states.groupBy { it.state.data.cusip }.forEach { (cusip, assets) -> found[cusip] = single(cusip, assets) }
+            synchronized(index) { states.forEach { add(it) } }
+        }
+        return found
+    }
+
+    private fun single(cusip: String, assets: Collection<StateAndRef<Asset>>): StateAndRef<Asset> {
+        return assets.singleOrNull()
+                ?: throw TooManyStatesFoundException("${assets.size} unconsumed assets carry CUSIP $cusip.")
+    }
+
+    /** Number of CUSIPs currently indexed. */
+    val size: Int get() = synchronized(index) { index.size }
+}
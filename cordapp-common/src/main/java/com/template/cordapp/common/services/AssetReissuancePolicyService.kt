@@ -0,0 +1,168 @@
+package com.template.cordapp.common.services
+
+import com.template.cordapp.common.flows.ReissueAssetFlow
+import com.template.cordapp.state.Asset
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.contracts.StateRef
+import net.corda.core.crypto.SecureHash
+import net.corda.core.node.AppServiceHub
+import net.corda.core.node.services.CordaService
+import net.corda.core.node.services.Vault
+import net.corda.core.serialization.SingletonSerializeAsToken
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.utilities.getOrThrow
+import net.corda.core.utilities.loggerFor
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+
+/**
+ * Watches the [Asset]s this node receives and starts [ReissueAssetFlow] for those the current [policy] says have too
+ * long a history. No policy is set by default; set one with [com.template.cordapp.common.flows.SetReissuanceChainDepthFlow]
+ * or with the `asset.reissue.maxChainDepth` system property.
+ *
+ * The chain depth of an asset is the number of transactions on its path back to its issue or latest re-issue: one for
+ * a fresh asset, plus one per transfer. Depths are memoised per transaction, so each new asset costs one step. Only
+ * assets whose recording has committed are ever re-issued.
+ */
+@CordaService
+class AssetReissuancePolicyService(private val services: AppServiceHub) : SingletonSerializeAsToken() {
+
+    companion object {
+        const val MAX_CHAIN_DEPTH_PROPERTY = "asset.reissue.maxChainDepth"
+        private const val DEPTH_CACHE_CAPACITY = 10_000
+
+        private val log = loggerFor<AssetReissuancePolicyService>()
+    }
+
+    /** Decides whether an asset we just received should be re-issued. */
+    interface ReissuancePolicy {
+        fun shouldReissue(asset: StateAndRef<Asset>, chainDepth: Int): Boolean
+    }
+
+    /** Re-issues any asset whose chain depth exceeds [maxChainDepth]. */
+    data class ChainDepthPolicy(val maxChainDepth: Int) : ReissuancePolicy {
+        override fun shouldReissue(asset: StateAndRef<Asset>, chainDepth: Int) = chainDepth > maxChainDepth
+    }
+
+    @Volatile
+    var policy: ReissuancePolicy? = Integer.getInteger(MAX_CHAIN_DEPTH_PROPERTY)?.takeIf { it > 0 }?.let { ChainDepthPolicy(it) }
+
+    private val depths: MutableMap<SecureHash, Int> = Collections.synchronizedMap(
+            object : LinkedHashMap<SecureHash, Int>(16, 0.75f, true) {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<SecureHash, Int>?) = size > DEPTH_CACHE_CAPACITY
+            })
+
+    private val reissuing = ConcurrentHashMap<String, CompletableFuture<SignedTransaction>>()
+
+    // Flows are started from here rather than from within the vault update that triggered them.
+    private val reissueStarter = Executors.newSingleThreadExecutor { Thread(it, "asset-reissue").apply { isDaemon = true } }
+
+    // Assets the policy picked while their transaction was being recorded, awaiting its commit. Guarded by itself.
+    private val candidates = object : LinkedHashMap<StateRef, String>() {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<StateRef, String>?) = size > DEPTH_CACHE_CAPACITY
+    }
+
+    init {
+        // The depth walk reads transaction storage, which needs the recording transaction the raw feed runs in. A
+        // re-issue is only scheduled from the committed feed, so a recording that rolls back never triggers one.
+        services.vaultService.rawUpdates.subscribe { update -> pickCandidates(update) }
+        services.vaultService.updates.subscribe { update -> scheduleCommitted(update) }
+    }
+
+    private fun pickCandidates(update: Vault.Update<*>) {
+        val currentPolicy = policy ?: return
+        update.produced.forEach { produced ->
+            if (produced.state.data !is Asset) return@forEach
+            @Suppress("UNCHECKED_CAST")
+            val asset = produced as StateAndRef<Asset>
+            if (currentPolicy.shouldReissue(asset, chainDepth(asset.ref.txhash))) {
+                synchronized(candidates) { candidates[asset.ref] = asset.state.data.cusip }
+            }
+        }
+    }
+
+    private fun scheduleCommitted(update: Vault.Update<*>) {
+        update.produced.forEach { produced ->
+            val cusip = synchronized(candidates) { candidates.remove(produced.ref) } ?: return@forEach
+            scheduleReissue(cusip)
+        }
+    }
+
+    /**
+     * Chain depth of the [Asset]s created by transaction [txId], taking the deepest input when several assets were
+     * transferred together. Must be called within a database transaction.
+     */
+    fun chainDepth(txId: SecureHash): Int {
+        depths[txId]?.let { return it }
+        // Iterative post-order walk, as histories can be far longer than the stack is deep.
+        val computed = HashMap<SecureHash, Int>()
+        val parents = HashMap<SecureHash, List<SecureHash>>()
+        val stack = ArrayDeque<SecureHash>()
+        stack.push(txId)
+        while (stack.isNotEmpty()) {
+            val current = stack.peek()
+            if (current in computed) {
+                stack.pop()
+                continue
+            }
+            val cached = depths[current]
+            if (cached != null) {
+                computed[current] = cached
+                stack.pop()
+                continue
+            }
+            val currentParents = parents.getOrPut(current) { assetParents(current) }
+            val pending = currentParents.filter { it !in computed }
+            if (pending.isEmpty()) {
+                computed[current] = 1 + (currentParents.map { computed[it]!! }.max() ?: 0)
+                stack.pop()
+            } else {
+                pending.forEach { stack.push(it) }
+            }
+        }
+        depths.putAll(computed)
+        return computed[txId]!!
+    }
+
+    /** The transactions that created the Assets consumed by [txId], as far as our transaction storage holds them. */
+    private fun assetParents(txId: SecureHash): List<SecureHash> {
+        val tx = services.validatedTransactions.getTransaction(txId)?.tx ?: return emptyList()
+        return tx.inputs.filter { input ->
+            val parent = services.validatedTransactions.getTransaction(input.txhash)?.tx
+            parent != null && parent.outputs[input.index].data is Asset
+        }.map { it.txhash }.distinct()
+    }
+
+    /**
+     * The re-issue of [cusip] the policy has scheduled and not yet finished, or null if there is none. A re-issue is
+     * scheduled as soon as the recording of the asset that triggered it commits, so it shows up here by the time that
+     * flow ends.
+     */
+    fun pendingReissue(cusip: String): CompletableFuture<SignedTransaction>? = reissuing[cusip]
+
+    private fun scheduleReissue(cusip: String) {
+        val reissue = CompletableFuture<SignedTransaction>()
+        if (reissuing.putIfAbsent(cusip, reissue) != null) return
+        reissueStarter.execute {
+            try {
+                services.startFlow(ReissueAssetFlow.Initiator(cusip)).returnValue.then {
+                    try {
+                        val reissueTx = it.getOrThrow()
+                        reissuing.remove(cusip)
+                        reissue.complete(reissueTx)
+                    } catch (e: Exception) {
+                        log.warn("Could not re-issue asset $cusip", e)
+                        reissuing.remove(cusip)
+                        reissue.completeExceptionally(e)
+                    }
+                }
+            } catch (e: Exception) {
+                log.warn("Could not start re-issue of asset $cusip", e)
+                reissuing.remove(cusip)
+                reissue.completeExceptionally(e)
+            }
+        }
+    }
+}
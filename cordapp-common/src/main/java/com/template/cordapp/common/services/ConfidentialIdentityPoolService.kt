@@ -0,0 +1,126 @@
+package com.template.cordapp.common.services
+
+import com.template.cordapp.common.flows.RefillIdentityPoolFlow
+import net.corda.core.identity.AnonymousParty
+import net.corda.core.identity.Party
+import net.corda.core.node.AppServiceHub
+import net.corda.core.node.services.CordaService
+import net.corda.core.serialization.SingletonSerializeAsToken
+import net.corda.core.utilities.getOrThrow
+import net.corda.core.utilities.loggerFor
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+
+/**
+ * Keeps a pool of confidential identity pairs already swapped with each counterparty we trade with, so that initiators
+ * do not have to run [net.corda.confidential.SwapIdentitiesFlow] before they can start building a transaction.
+ *
+ * A pair is handed out once and then dropped. Pooling only pays for counterparties we trade with regularly, so a
+ * counterparty's pool is only kept topped up once [take] has been called for it [POOLING_THRESHOLD] times within
+ * [DEMAND_WINDOW]. From then on, whenever its pool falls below [LOW_WATER_MARK], a [RefillIdentityPoolFlow] is started
+ * in the background to top it up to [TARGET_SIZE]; [refill] starts one on demand whatever the demand. Flows fall back
+ * to an inline swap when [take] finds the pool empty, which is always the case for the first trades with a
+ * counterparty.
+ */
+@CordaService
+class ConfidentialIdentityPoolService(private val services: AppServiceHub) : SingletonSerializeAsToken() {
+
+    companion object {
+        const val LOW_WATER_MARK = 5
+        const val TARGET_SIZE = 20
+        const val POOLING_THRESHOLD = 3
+        @JvmField
+        val DEMAND_WINDOW: Duration = Duration.ofMinutes(10)
+
+        private val log = loggerFor<ConfidentialIdentityPoolService>()
+    }
+
+    private val pools = ConcurrentHashMap<Party, ConcurrentLinkedQueue<LinkedHashMap<Party, AnonymousParty>>>()
+    private val refills = ConcurrentHashMap<Party, CompletableFuture<Int>>()
+    private val demand = ConcurrentHashMap<Party, Demand>()
+
+    // Refill flows are started from here rather than from the fiber that drew from the pool.
+    private val refillStarter = Executors.newSingleThreadExecutor { Thread(it, "identity-pool-refill").apply { isDaemon = true } }
+
+    /**
+     * Removes and returns a pre-swapped identity pair for [counterparty] in the shape [net.corda.confidential.SwapIdentitiesFlow]
+     * returns, or null if none is available. Either way the pool is topped up in the background when it runs low and
+     * [counterparty] has reached [POOLING_THRESHOLD].
+     */
+    fun take(counterparty: Party): LinkedHashMap<Party, AnonymousParty>? {
+        val pool = poolFor(counterparty)
+        val identities = pool.poll()
+        val takes = demand.getOrPut(counterparty) { Demand() }.record(System.nanoTime())
+        if (pool.size < LOW_WATER_MARK && takes >= POOLING_THRESHOLD) scheduleRefill(counterparty)
+        return identities
+    }
+
+    /** Number of unused identity pairs held for [counterparty]. */
+    fun available(counterparty: Party): Int = pools[counterparty]?.size ?: 0
+
+    private fun poolFor(counterparty: Party) = pools.getOrPut(counterparty) { ConcurrentLinkedQueue() }
+
+    /**
+     * Tops the pool for [counterparty] up to [TARGET_SIZE], joining the refill already running for it if there is one.
+     * The returned future completes with the number of pairs added once they can be taken. Must not be called from a
+     * flow.
+     */
+    fun refill(counterparty: Party): CompletableFuture<Int> {
+        val refill = CompletableFuture<Int>()
+        refills.putIfAbsent(counterparty, refill)?.let { return it }
+        try {
+            val needed = TARGET_SIZE - available(counterparty)
+            if (needed <= 0) {
+                finish(counterparty, refill) { 0 }
+                return refill
+            }
+            // Pairs are only pooled once the refill flow has committed, so every identity handed out is registered.
+            services.startFlow(RefillIdentityPoolFlow(counterparty, needed)).returnValue.then {
+                finish(counterparty, refill) {
+                    val swapped = it.getOrThrow()
+                    poolFor(counterparty).addAll(swapped)
+                    swapped.size
+                }
+            }
+        } catch (e: Exception) {
+            finish(counterparty, refill) { throw e }
+        }
+        return refill
+    }
+
+    private fun finish(counterparty: Party, refill: CompletableFuture<Int>, added: () -> Int) {
+        try {
+            val count = added()
+            refills.remove(counterparty)
+            refill.complete(count)
+        } catch (e: Exception) {
+            log.warn("Could not refill confidential identity pool for ${counterparty.name}", e)
+            refills.remove(counterparty)
+            refill.completeExceptionally(e)
+        }
+    }
+
+    private fun scheduleRefill(counterparty: Party) {
+        if (refills.containsKey(counterparty)) return
+        refillStarter.execute { refill(counterparty) }
+    }
+
+    /** Counts the [take] calls for one counterparty within the current [DEMAND_WINDOW]. */
+    private class Demand {
+        private var windowStart = 0L
+        private var takes = 0
+
+        /** Records a take at [now], in [System.nanoTime] terms, and returns the number of takes in the window. */
+        @Synchronized
+        fun record(now: Long): Int {
+            if (takes == 0 || now - windowStart > DEMAND_WINDOW.toNanos()) {
+                windowStart = now
+                takes = 0
+            }
+            return ++takes
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.template.cordapp.common.services
+
+import com.template.cordapp.exception.NotaryNotFoundException
+import net.corda.core.identity.Party
+import net.corda.core.node.AppServiceHub
+import net.corda.core.node.services.CordaService
+import net.corda.core.serialization.SingletonSerializeAsToken
+import net.corda.core.utilities.loggerFor
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Picks the notary for transactions that have no inputs and so are free to choose one. The [strategy] is pluggable and
+ * defaults to [FirstNotarySelection], the first notary on the network map, which is where cash is issued and where the
+ * buyer's coin selection looks for it at settlement.
+ *
+ * Spreading issuance with [CusipStickyNotarySelection] or another strategy is opt-in, either with
+ * [com.template.cordapp.common.flows.SetNotarySelectionStrategyFlow] or with the `notary.selection.strategy` system
+ * property, each taking one of the names [strategyNamed] knows. Settlement stays on the asset's notary and no notary
+ * change is done, so it only works where buyers hold cash on every notary assets are issued on.
+ *
+ * Initiators report how long each [net.corda.core.flows.FinalityFlow] took through [recordFinality], which feeds
+ * [LeastLatencyNotarySelection].
+ */
+@CordaService
+class NotarySelectionService(private val services: AppServiceHub) : SingletonSerializeAsToken() {
+
+    companion object {
+        const val STRATEGY_PROPERTY = "notary.selection.strategy"
+
+        // Weight of the newest sample in the moving average.
+        private const val ALPHA = 0.2
+
+        private val log = loggerFor<NotarySelectionService>()
+
+        /**
+         * The strategy called [name]: `first`, `round-robin`, `least-latency` or `cusip-sticky`. Throws
+         * [IllegalArgumentException] for any other name.
+         */
+        @JvmStatic
+        fun strategyNamed(name: String): NotarySelectionStrategy = when (name.trim().toLowerCase()) {
+            "first" -> FirstNotarySelection()
+            "round-robin" -> RoundRobinNotarySelection()
+            "least-latency" -> LeastLatencyNotarySelection()
+            "cusip-sticky" -> CusipStickyNotarySelection()
+            else -> throw IllegalArgumentException("Unknown notary selection strategy '$name'; expected first, round-robin, least-latency or cusip-sticky.")
+        }
+
+        private fun configuredStrategy(): NotarySelectionStrategy? {
+            val name = System.getProperty(STRATEGY_PROPERTY) ?: return null
+            return try {
+                strategyNamed(name)
+            } catch (e: IllegalArgumentException) {
+                log.warn("Ignoring $STRATEGY_PROPERTY: ${e.message}")
+                null
+            }
+        }
+    }
+
+    private val latencyNanos = ConcurrentHashMap<Party, Double>()
+
+    @Volatile
+    var strategy: NotarySelectionStrategy = configuredStrategy() ?: FirstNotarySelection()
+
+    /**
+     * The notary [strategy] selects for a transaction about [cusip], which may be null when there is none.
+     */
+    @JvmOverloads
+    fun select(cusip: String? = null): Party = select(strategy, cusip)
+
+    fun select(strategy: NotarySelectionStrategy, cusip: String?): Party {
+        val notaries = services.networkMapCache.notaryIdentities
+        if (notaries.isEmpty()) throw NotaryNotFoundException("No available notary.")
+        return strategy.select(notaries, cusip) { observedLatency(it) }
+    }
+
+    /**
+     * Records the time from [startedAt] until now as one finality round trip through [notary].
+     */
+    fun recordFinality(notary: Party, startedAt: Instant) {
+        recordLatency(notary, Duration.between(startedAt, services.clock.instant()))
+    }
+
+    fun recordLatency(notary: Party, latency: Duration) {
+        // A flow restored from a checkpoint after a restart can report a meaningless interval.
+        if (latency.isNegative) return
+        val sample = latency.toNanos().toDouble()
+        latencyNanos.merge(notary, sample) { average, _ -> average + ALPHA * (sample - average) }
+    }
+
+    /** Moving average of finality latency through [notary], or null if no flow has used it yet. */
+    fun observedLatency(notary: Party): Duration? = latencyNanos[notary]?.let { Duration.ofNanos(it.toLong()) }
+}
+
+/**
+ * Chooses one of [notaries], which are given in network map order.
+ */
+interface NotarySelectionStrategy {
+    fun select(notaries: List<Party>, cusip: String?, latency: (Party) -> Duration?): Party
+}
+
+/**
+ * Always the first notary on the network map, as every flow used before notaries could be selected.
+ */
+class FirstNotarySelection : NotarySelectionStrategy {
+    override fun select(notaries: List<Party>, cusip: String?, latency: (Party) -> Duration?): Party = notaries.first()
+}
+
+class RoundRobinNotarySelection : NotarySelectionStrategy {
+    private val next = AtomicInteger()
+
+    override fun select(notaries: List<Party>, cusip: String?, latency: (Party) -> Duration?): Party =
+            notaries[Math.floorMod(next.getAndIncrement(), notaries.size)]
+}
+
+/**
+ * Prefers the notary with the lowest observed latency. Notaries without a sample yet are tried first, so each gets
+ * measured.
+ */
+class LeastLatencyNotarySelection : NotarySelectionStrategy {
+    override fun select(notaries: List<Party>, cusip: String?, latency: (Party) -> Duration?): Party =
+            notaries.firstOrNull { latency(it) == null } ?: notaries.minBy { latency(it)!! }!!
+}
+
+/**
+ * Hashes [cusip] onto a notary, so every node maps a CUSIP to the same notary. Notaries are sorted by name first so that
+ * the mapping does not depend on any one node's network map order. Falls back to [fallback] when there is no CUSIP.
+ */
+class CusipStickyNotarySelection(
+        private val fallback: NotarySelectionStrategy = RoundRobinNotarySelection()
+) : NotarySelectionStrategy {
+    override fun select(notaries: List<Party>, cusip: String?, latency: (Party) -> Duration?): Party =
+            if (cusip == null) fallback.select(notaries, null, latency)
+            else notaries.sortedBy { it.name.toString() }[Math.floorMod(cusip.hashCode(), notaries.size)]
+}
@@ -1,18 +1,96 @@
 package com.template.cordapp.utils
 
-import com.template.cordapp.schema.AssetSchemaV1
+import com.template.cordapp.common.services.AssetCusipIndexService
+import com.template.cordapp.schema.AssetSchemaV2
+import com.template.cordapp.schema.AssetTransferSchemaV2
 import com.template.cordapp.state.Asset
+import com.template.cordapp.state.AssetTransfer
+import com.template.cordapp.state.RequestStatus
+import net.corda.core.contracts.Amount
 import net.corda.core.contracts.StateAndRef
 import net.corda.core.flows.FlowException
+import net.corda.core.identity.AbstractParty
 import net.corda.core.node.ServiceHub
+import net.corda.core.node.services.Vault
 import net.corda.core.node.services.queryBy
+import net.corda.core.node.services.vault.*
+import net.corda.core.node.services.vault.Builder.between
 import net.corda.core.node.services.vault.Builder.equal
-import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.Builder.sum
+import java.util.*
 
+/**
+ * The unconsumed [Asset] with [cusip], served from [AssetCusipIndexService] so the common case costs no SQL.
+ */
 fun ServiceHub.getAssetByCusip(cusip: String): StateAndRef<Asset> {
-    val cusipExpr = AssetSchemaV1.PersistentAsset::cusip.equal(cusip)
-    val cusipCriteria = QueryCriteria.VaultCustomQueryCriteria(cusipExpr)
-
-    return this.vaultService.queryBy<Asset>(cusipCriteria).states.singleOrNull()
+    return this.cordaService(AssetCusipIndexService::class.java).lookup(cusip)
             ?: throw FlowException("Asset with id $cusip not found.")
-}
\ No newline at end of file
+}
+
+/**
+ * Loads the unconsumed [Asset] for every given CUSIP, keyed by CUSIP. Cached assets come from [AssetCusipIndexService]
+ * and any misses are fetched with a single vault query. Fails if any CUSIP is unknown.
+ */
+fun ServiceHub.getAssetsByCusips(cusips: Collection<String>): Map<String, StateAndRef<Asset>> {
+    if (cusips.isEmpty()) return emptyMap()
+    val wanted = cusips.toSet()
+    val assets = this.cordaService(AssetCusipIndexService::class.java).lookup(wanted)
+    return wanted.associate { cusip ->
+        cusip to (assets[cusip] ?: throw FlowException("Asset with id $cusip not found."))
+    }
+}
+
+/**
+ * Unconsumed [Asset]s whose purchase cost in [currency] lies between [min] and [max] (smallest currency units,
+ * inclusive), most valuable first. Served from [AssetSchemaV2], so filtering, sorting and paging happen in SQL.
+ */
+fun ServiceHub.getAssetsByPurchaseCost(currency: Currency, min: Long, max: Long,
+                                       paging: PageSpecification = PageSpecification(DEFAULT_PAGE_NUM, DEFAULT_PAGE_SIZE)): Vault.Page<Asset> {
+    val currencyCriteria = QueryCriteria.VaultCustomQueryCriteria(AssetSchemaV2.PersistentAsset::purchaseCostCurrency.equal(currency.currencyCode))
+    val rangeCriteria = QueryCriteria.VaultCustomQueryCriteria(AssetSchemaV2.PersistentAsset::purchaseCostQuantity.between(min, max))
+    val byValue = Sort(setOf(Sort.SortColumn(SortAttribute.Custom(AssetSchemaV2.PersistentAsset::class.java, "purchaseCostQuantity"), Sort.Direction.DESC)))
+
+    return this.vaultService.queryBy<Asset>(currencyCriteria.and(rangeCriteria), paging, byValue)
+}
+
+/**
+ * Total purchase cost of all unconsumed [Asset]s per currency, summed by the database over [AssetSchemaV2].
+ */
+fun ServiceHub.getPortfolioValue(): Map<Currency, Amount<Currency>> {
+    val sumExpr = AssetSchemaV2.PersistentAsset::purchaseCostQuantity.sum(groupByColumns = listOf(AssetSchemaV2.PersistentAsset::purchaseCostCurrency))
+    val results = this.vaultService.queryBy<Asset>(QueryCriteria.VaultCustomQueryCriteria(sumExpr)).otherResults
+
+    // Aggregate results come back flattened as [sum, currency, sum, currency, ...].
+    val totals = LinkedHashMap<Currency, Amount<Currency>>()
+    for (i in 0 until results.size step 2) {
+        val currency = Currency.getInstance(results[i + 1] as String)
+        totals[currency] = Amount((results[i] as Number).toLong(), currency)
+    }
+    return totals
+}
+
+/**
+ * Unconsumed [AssetTransfer]s in [status] that name [clearingHouse] as clearing house. Answered from the
+ * (status_code, clearing_house) index of [AssetTransferSchemaV2] rather than a scan of every transfer.
+ */
+@JvmOverloads
+fun ServiceHub.getTransfersForClearingHouse(status: RequestStatus, clearingHouse: AbstractParty,
+                                            paging: PageSpecification = PageSpecification(DEFAULT_PAGE_NUM, DEFAULT_PAGE_SIZE)): Vault.Page<AssetTransfer> {
+    val statusCriteria = QueryCriteria.VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::statusCode.equal(status.code))
+    val clearingHouseCriteria = QueryCriteria.VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::clearingHouse.equal(clearingHouse))
+
+    return this.vaultService.queryBy<AssetTransfer>(statusCriteria.and(clearingHouseCriteria), paging)
+}
+
+/**
+ * Unconsumed [AssetTransfer]s in [status] bought by [securityBuyer], from the (status_code, lender_of_cash) index of
+ * [AssetTransferSchemaV2].
+ */
+@JvmOverloads
+fun ServiceHub.getTransfersForBuyer(status: RequestStatus, securityBuyer: AbstractParty,
+                                    paging: PageSpecification = PageSpecification(DEFAULT_PAGE_NUM, DEFAULT_PAGE_SIZE)): Vault.Page<AssetTransfer> {
+    val statusCriteria = QueryCriteria.VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::statusCode.equal(status.code))
+    val buyerCriteria = QueryCriteria.VaultCustomQueryCriteria(AssetTransferSchemaV2.PersistentAssetTransfer::securityBuyer.equal(securityBuyer))
+
+    return this.vaultService.queryBy<AssetTransfer>(statusCriteria.and(buyerCriteria), paging)
+}
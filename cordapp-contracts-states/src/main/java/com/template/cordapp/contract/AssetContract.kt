@@ -3,10 +3,12 @@ package com.synechron.cordapp.contract
 import com.template.cordapp.state.Asset
 import com.template.cordapp.state.AssetTransfer
 import net.corda.core.contracts.*
+import net.corda.core.crypto.SecureHash
+import net.corda.core.identity.AbstractParty
 import net.corda.core.transactions.LedgerTransaction
 import net.corda.finance.contracts.asset.Cash
-import net.corda.finance.utils.sumCash
 import java.security.PublicKey
+import java.util.*
 
 class AssetContract : Contract {
     companion object {
@@ -19,6 +21,12 @@ class AssetContract : Contract {
     interface Commands : CommandData {
         class Create : TypeOnlyCommandData(), Commands
         class Transfer : TypeOnlyCommandData(), Commands
+        class Exit : TypeOnlyCommandData(), Commands
+        /**
+         * Puts exited assets back on ledger with no history. [exitTxId] names the transaction that exited them; the
+         * contract cannot see that transaction, so the issuer and owner each check it before signing.
+         */
+        data class Reissue(val exitTxId: SecureHash) : Commands
     }
 
     override fun verify(tx: LedgerTransaction) {
@@ -27,45 +35,103 @@ class AssetContract : Contract {
         when (command.value) {
             is Commands.Create -> verifyCreate(tx, setOfSigners)
             is Commands.Transfer -> verifyTransfer(tx, setOfSigners)
+            is Commands.Exit -> verifyExit(tx, setOfSigners)
+            is Commands.Reissue -> verifyReissue(tx, setOfSigners)
             else -> throw IllegalArgumentException("Unrecognised command.")
         }
     }
 
+    /**
+     * An issue transaction may carry any number of [Asset] outputs so that a book of invoices can be onboarded in
+     * batches. Every output is checked independently, and CUSIPs must not repeat within the transaction.
+     */
     private fun verifyCreate(tx: LedgerTransaction, signers: Set<PublicKey>) = requireThat {
         "No inputs must be consumed." using (tx.inputStates.isEmpty())
-        "Only one out state should be created." using (tx.outputStates.size == 1)
-        val output = tx.outputsOfType<Asset>().single()
-        "Must have a positive amount." using (output.purchaseCost > output.purchaseCost.copy(quantity = 0))
-        "Owner only may sign the Asset issue transaction." using (output.owner.owningKey in signers)
+        val outputs = tx.outputsOfType<Asset>()
+        "At least one Asset state should be created." using (outputs.isNotEmpty())
+        "Only Asset states may be created." using (outputs.size == tx.outputStates.size)
+        val cusips = HashSet<String>(outputs.size)
+        "Each Asset must have a unique CUSIP." using (outputs.all { cusips.add(it.cusip) })
+        "Must have a positive amount." using (outputs.all { it.purchaseCost.quantity > 0 })
+        "Owner only may sign the Asset issue transaction." using (outputs.all { it.owner.owningKey in signers })
+        "The owner must be the issuer of a new Asset." using (outputs.all { it.owner == it.issuer })
     }
 
-    private fun verifyTransfer(tx: LedgerTransaction, signers: Set<PublicKey>) = requireThat {
-        val inputAssets = tx.inputsOfType<Asset>()
-        val inputAssetTransfers = tx.inputsOfType<AssetTransfer>()
-        "There must be one input obligation." using (inputAssets.size == 1)
-        // Check there are output cash states.
-        // We don't care about cash inputs, the Cash contract handles those.
-        val cash = tx.outputsOfType<Cash.State>()
-        "There must be output cash." using (cash.isNotEmpty())
-
-        // Check that the cash is being assigned to us.
-        val inputAsset = inputAssets.single()
-        val inputAssetTransfer = inputAssetTransfers.single()
-        val acceptableCash = cash.filter { it.owner in listOf(inputAsset.owner, inputAssetTransfer.securitySeller) }
-        "There must be output cash paid to the recipient." using (acceptableCash.isNotEmpty())
-
-        // Sum the cash being sent to us (we don't care about the issuer).
-        val sumAcceptableCash = acceptableCash.sumCash().withoutIssuer()
-        "The amount settled must be equal to the asset's purchase cost amount." using (inputAsset.purchaseCost == sumAcceptableCash)
+    /**
+     * Removes [Asset]s from the ledger ahead of a re-issuance. Both the owner and the issuer must agree, as the issuer
+     * is the party that will put an equivalent state back.
+     */
+    private fun verifyExit(tx: LedgerTransaction, signers: Set<PublicKey>) = requireThat {
+        val inputs = tx.inputsOfType<Asset>()
+        "At least one Asset state should be exited." using (inputs.isNotEmpty())
+        "Only Asset states may be exited." using (inputs.size == tx.inputStates.size)
+        "No Asset states may be created." using (tx.outputsOfType<Asset>().isEmpty())
+        "Owner must sign the Asset exit transaction." using (inputs.all { it.owner.owningKey in signers })
+        "Only Assets with a recorded issuer may be exited." using (inputs.all { it.issuer != null })
+        "Issuer must sign the Asset exit transaction." using (inputs.all { it.issuer!!.owningKey in signers })
+    }
 
+    /**
+     * Puts previously exited [Asset]s back on ledger without inputs, which cuts their transaction history. The issuer
+     * and the owner must both sign: together they attest that each output matches a state exited in
+     * [Commands.Reissue.exitTxId], so neither can mint an asset or take one over alone.
+     */
+    private fun verifyReissue(tx: LedgerTransaction, signers: Set<PublicKey>) = requireThat {
+        "No inputs must be consumed." using (tx.inputStates.isEmpty())
         val outputs = tx.outputsOfType<Asset>()
-        // If the obligation has been partially settled then it should still exist.
-        "There must be one output Asset." using (outputs.size == 1)
+        "At least one Asset state should be re-issued." using (outputs.isNotEmpty())
+        "Only Asset states may be re-issued." using (outputs.size == tx.outputStates.size)
+        val cusips = HashSet<String>(outputs.size)
+        "Each Asset must have a unique CUSIP." using (outputs.all { cusips.add(it.cusip) })
+        "Must have a positive amount." using (outputs.all { it.purchaseCost.quantity > 0 })
+        "Only Assets with a recorded issuer may be re-issued." using (outputs.all { it.issuer != null })
+        "Issuer must sign the Asset re-issue transaction." using (outputs.all { it.issuer!!.owningKey in signers })
+        "Owner must sign the Asset re-issue transaction." using (outputs.all { it.owner.owningKey in signers })
+    }
+
+    /**
+     * A transfer may move any number of [Asset]s at once. States are grouped by CUSIP: each group must hold exactly one
+     * input and one output [Asset], and the input must be matched by an [AssetTransfer] for the same CUSIP. Cash is
+     * matched per seller, so that every seller is paid the total purchase cost of the assets it sells, whether the buyer
+     * paid each leg separately or in one netted payment. Every state is looked at a constant number of times, so the
+     * cost is linear in the size of the transaction.
+     */
+    private fun verifyTransfer(tx: LedgerTransaction, signers: Set<PublicKey>) = requireThat {
+        val groups = tx.groupStates(Asset::class.java) { it.cusip }
+        "There must be at least one input Asset." using (groups.any { it.inputs.isNotEmpty() })
+
+        val transfers = HashMap<String, AssetTransfer>()
+        tx.inputsOfType<AssetTransfer>().forEach {
+            "Each AssetTransfer must be for a different CUSIP." using (transfers.put(it.asset.cusip, it) == null)
+        }
+
+        // Cash paid to each party in each currency, gathered in one pass over the outputs.
+        // We don't care about cash inputs or issuers, the Cash contract handles those.
+        val paid = HashMap<Pair<AbstractParty, Currency>, Long>()
+        tx.outputsOfType<Cash.State>().forEach {
+            val key = Pair(it.owner, it.amount.token.product)
+            paid[key] = (paid[key] ?: 0L) + it.amount.quantity
+        }
+        "There must be output cash." using (paid.isNotEmpty())
+
+        val owed = HashMap<Pair<AbstractParty, Currency>, Long>()
+        groups.forEach { group ->
+            val cusip = group.groupingKey
+            "There must be exactly one input Asset for $cusip." using (group.inputs.size == 1)
+            "There must be exactly one output Asset for $cusip." using (group.outputs.size == 1)
+            val input = group.inputs.single()
+            val output = group.outputs.single()
+            val transfer = transfers[cusip]
+            "Input Asset $cusip must have a matching AssetTransfer." using (transfer != null)
+            // Check only the paid property changes.
+            "Must not not change Asset data except owner field value." using (input == output.copy(owner = input.owner))
+            "Owner only may sign the Asset issue transaction." using (output.owner.owningKey in signers)
+
+            val key = Pair(transfer!!.securitySeller, input.purchaseCost.token)
+            owed[key] = (owed[key] ?: 0L) + input.purchaseCost.quantity
+        }
 
-        // Check only the paid property changes.
-        val output = outputs.single()
-        "Must not not change Asset data except owner field value." using (inputAsset == output.copy(owner = inputAsset.owner))
-        "Owner only may sign the Asset issue transaction." using (output.owner.owningKey in signers)
+        "The amount settled must be equal to the assets' total purchase cost amount." using (owed.all { (key, amount) -> paid[key] == amount })
     }
 }
 
@@ -1,5 +1,6 @@
 package com.template.cordapp.contract
 
+import com.template.cordapp.state.AssetTransfer
 import net.corda.core.contracts.*
 import net.corda.core.transactions.LedgerTransaction
 import java.security.PublicKey
@@ -28,9 +29,16 @@ class AssetTransferContract : Contract {
         }
     }
 
+    /**
+     * A create request may propose several [AssetTransfer]s at once, one per CUSIP.
+     */
     private fun verifyCreateRequest(tx: LedgerTransaction, signers: Set<PublicKey>) = requireThat {
         "No inputs must be consumed." using (tx.inputStates.isEmpty())
-        "Only one out state should be created." using (tx.outputStates.size == 1)
+        val outputs = tx.outputsOfType<AssetTransfer>()
+        "At least one AssetTransfer state should be created." using (outputs.isNotEmpty())
+        "Only AssetTransfer states may be created." using (outputs.size == tx.outputStates.size)
+        val cusips = HashSet<String>(outputs.size)
+        "Each AssetTransfer must be for a different CUSIP." using (outputs.all { cusips.add(it.asset.cusip) })
         //TODO Add more rules to verify create asset transfer request.
     }
 
@@ -1,7 +1,6 @@
 package com.template.cordapp.contract;
 
 
-import kotlin.collections.CollectionsKt;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
 
@@ -10,23 +9,18 @@ import java.util.*;
 
 public final class ContractUtils {
 
-    public static final Set keysFromParticipants(ContractState state)
+    public static final Set<PublicKey> keysFromParticipants(ContractState state)
     {
 
-        List stateParticipants = state.getParticipants();
+        List<AbstractParty> stateParticipants = state.getParticipants();
 
-        Collection participantsList = new ArrayList(stateParticipants);
-        Iterator iterator = participantsList.iterator();
-
-        while(iterator.hasNext())
+        Set<PublicKey> keys = new LinkedHashSet<>(stateParticipants.size());
+        for (AbstractParty party : stateParticipants)
         {
-            Object item = iterator.next();
-            AbstractParty party = (AbstractParty)item;
-            PublicKey key = party.getOwningKey();
-            participantsList.add(key);
+            keys.add(party.getOwningKey());
         }
 
-        return CollectionsKt.toSet(participantsList);
+        return keys;
     }
 
 
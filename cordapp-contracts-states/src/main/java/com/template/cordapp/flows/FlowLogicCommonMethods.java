@@ -2,6 +2,8 @@ package com.template.cordapp.flows;
 
 import com.template.cordapp.exception.NotaryNotFoundException;
 import com.template.cordapp.exception.StateNotFoundOnVaultException;
+import com.template.cordapp.services.LinearStateCacheService;
+import com.template.cordapp.services.WellKnownIdentityCacheService;
 
 import java.util.List;
 import java.util.Set;
@@ -20,7 +22,8 @@ import org.jetbrains.annotations.NotNull;
 
 /***
  * Interface offers default functions implementation for get first notary from NetworkMap,
- * find State on vault by linearId, and resolve anonymous or abstract party to well known identity.
+ * find State on vault by linearId (served from [LinearStateCacheService] when cached), and resolve anonymous or
+ * abstract party to well known identity (cached by [WellKnownIdentityCacheService]).
  */
 
 public interface FlowLogicCommonMethods {
@@ -48,9 +51,15 @@ public interface FlowLogicCommonMethods {
          Intrinsics.checkParameterIsNotNull(receiver, "receiver");
          Intrinsics.checkParameterIsNotNull(linearId, "linearId");
          Intrinsics.checkParameterIsNotNull(cls, "cls");
+         LinearStateCacheService cache = receiver.cordaService(LinearStateCacheService.class);
+         StateAndRef cached = cache.get(linearId, cls);
+         if (cached != null) {
+            return cached;
+         }
          LinearStateQueryCriteria queryCriteria = new LinearStateQueryCriteria((List)null, CollectionsKt.listOf(linearId), StateStatus.UNCONSUMED, (Set)null);
          StateAndRef var10000 = (StateAndRef)CollectionsKt.singleOrNull(receiver.getVaultService().queryBy(cls, (QueryCriteria)queryCriteria).getStates());
          if (var10000 != null) {
+            cache.put(linearId, cls, var10000);
             return var10000;
          } else {
             throw (new StateNotFoundOnVaultException("State with id " + linearId + " not found."));
@@ -61,7 +70,7 @@ public interface FlowLogicCommonMethods {
       public static Party resolveIdentity(@NotNull ServiceHub receiver, @NotNull AbstractParty abstractParty) {
          Intrinsics.checkParameterIsNotNull(receiver, "$receiver");
          Intrinsics.checkParameterIsNotNull(abstractParty, "abstractParty");
-         return receiver.getIdentityService().requireWellKnownPartyFromAnonymous(abstractParty);
+         return receiver.cordaService(WellKnownIdentityCacheService.class).requireWellKnownPartyFromAnonymous(abstractParty);
       }
    }
 }
@@ -43,3 +43,40 @@ object AssetSchemaV1 : MappedSchema(schemaFamily = AssetSchema.javaClass,
     }
 }
 
+
+/**
+ * Second version of an [AssetSchema] schema. The purchase cost is split into a numeric quantity and a currency code so
+ * that range filters, sorting by value and sums per currency can be pushed down to the database.
+ */
+object AssetSchemaV2 : MappedSchema(schemaFamily = AssetSchema.javaClass,
+        version = 2, mappedTypes = listOf(PersistentAsset::class.java)) {
+    @Entity(name = "PersistentAssetV2")
+    @Table(name = "asset_v2", indexes = arrayOf(Index(name = "idx_asset_v2_owner", columnList = "owner"),
+            Index(name = "idx_asset_v2_cusip", columnList = "cusip"),
+            Index(name = "idx_asset_v2_cost", columnList = "purchase_cost_currency,purchase_cost_quantity")))
+    class PersistentAsset(
+            @Column(name = "cusip")
+            val cusip: String,
+
+            @Column(name = "asset_name")
+            val assetName: String,
+
+            @Column(name = "purchase_cost_quantity")
+            val purchaseCostQuantity: Long,
+
+            @Column(name = "purchase_cost_currency", length = 3)
+            val purchaseCostCurrency: String,
+
+            @Column(name = "owner")
+            val owner: AbstractParty,
+
+            @ElementCollection
+            @Column(name = "participants")
+            @CollectionTable(name = "asset_v2_participants", joinColumns = arrayOf(
+                    JoinColumn(name = "output_index", referencedColumnName = "output_index"),
+                    JoinColumn(name = "transaction_id", referencedColumnName = "transaction_id")))
+            var participants: MutableSet<AbstractParty>? = null
+    ) : PersistentState() {
+        constructor() : this("default-constructor-required-for-hibernate", "", 0L, "", NullKeys.NULL_PARTY, mutableSetOf())
+    }
+}
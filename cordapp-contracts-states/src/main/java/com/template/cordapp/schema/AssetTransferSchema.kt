@@ -4,6 +4,8 @@ import net.corda.core.crypto.NullKeys
 import net.corda.core.identity.AbstractParty
 import net.corda.core.schemas.MappedSchema
 import net.corda.core.schemas.PersistentState
+import org.hibernate.annotations.Type
+import java.util.*
 import javax.persistence.*
 
 /**
@@ -50,3 +52,47 @@ object AssetTransferSchemaV1 : MappedSchema(schemaFamily = AssetSchema.javaClass
     }
 }
 
+
+/**
+ * Second version of an [AssetTransferSchema] schema, laid out for the clearing house's hot queries. The status is
+ * stored as [RequestStatus.code], the linear id as a binary UUID, and composite indexes cover "transfers in a given
+ * status for a given clearing house / buyer".
+ */
+object AssetTransferSchemaV2 : MappedSchema(schemaFamily = AssetTransferSchema.javaClass,
+        version = 2, mappedTypes = listOf(PersistentAssetTransfer::class.java)) {
+    @Entity(name = "PersistentAssetTransferV2")
+    @Table(name = "asset_transfer_v2", indexes = arrayOf(Index(name = "idx_asset_transfer_v2_linear_id", columnList = "linear_id"),
+            Index(name = "idx_asset_transfer_v2_cusip", columnList = "cusip"),
+            Index(name = "idx_asset_transfer_v2_status_ch", columnList = "status_code,clearing_house"),
+            Index(name = "idx_asset_transfer_v2_status_buyer", columnList = "status_code,lender_of_cash")))
+    class PersistentAssetTransfer(
+            @Column(name = "cusip")
+            val cusip: String,
+
+            @Column(name = "lender_of_security")
+            val securitySeller: AbstractParty,
+
+            @Column(name = "lender_of_cash")
+            val securityBuyer: AbstractParty,
+
+            @Column(name = "clearing_house")
+            val clearingHouse: AbstractParty?,
+
+            @Column(name = "status_code")
+            val statusCode: Short,
+
+            @ElementCollection
+            @Column(name = "participants")
+            @CollectionTable(name = "asset_transfer_v2_participants", joinColumns = arrayOf(
+                    JoinColumn(name = "output_index", referencedColumnName = "output_index"),
+                    JoinColumn(name = "transaction_id", referencedColumnName = "transaction_id")))
+            var participants: MutableSet<AbstractParty>? = null,
+
+            @Column(name = "linear_id", length = 16)
+            @Type(type = "uuid-binary")
+            val linearId: UUID
+    ) : PersistentState() {
+        constructor() : this("default-constructor-required-for-hibernate", NullKeys.NULL_PARTY, NullKeys.NULL_PARTY,
+                NullKeys.NULL_PARTY, 0, mutableSetOf(), UUID(0, 0))
+    }
+}
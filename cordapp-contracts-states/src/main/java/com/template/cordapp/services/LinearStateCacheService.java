@@ -0,0 +1,151 @@
+package com.template.cordapp.services;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.LinearState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of unconsumed [LinearState]s keyed by [UniqueIdentifier] and state class, used by
+ * [FlowLogicCommonMethods.DefaultImpls.loadState] so that confirm and settlement flows do not run a vault query every
+ * time they start.
+ *
+ * Entries are driven by the vault's update feed, which only reports transactions once they have committed: produced
+ * linear states are cached and consumed ones evicted, so a cached entry is never a state the vault already knows to be
+ * spent, nor one whose recording was rolled back. Hit, miss and eviction counters are exposed for monitoring.
+ */
+@CordaService
+public final class LinearStateCacheService extends SingletonSerializeAsToken {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final Map<Key, StateAndRef<?>> entries;
+    // Refs consumed recently, so a vault read that raced with the consuming update is not cached as live.
+    private final Map<StateRef, Boolean> consumedRefs;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LinearStateCacheService(@NotNull AppServiceHub serviceHub) {
+        this(serviceHub, DEFAULT_CAPACITY);
+    }
+
+    LinearStateCacheService(@NotNull AppServiceHub serviceHub, int capacity) {
+        this.entries = new LinkedHashMap<Key, StateAndRef<?>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, StateAndRef<?>> eldest) {
+                if (size() > capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.consumedRefs = new LinkedHashMap<StateRef, Boolean>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StateRef, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+        serviceHub.getVaultService().getUpdates().subscribe(this::onUpdate);
+    }
+
+    private void onUpdate(Vault.Update<ContractState> update) {
+        synchronized (entries) {
+            for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+                ContractState data = consumed.getState().getData();
+                if (data instanceof LinearState) {
+                    consumedRefs.put(consumed.getRef(), Boolean.TRUE);
+                    entries.remove(new Key(((LinearState) data).getLinearId(), data.getClass()));
+                }
+            }
+            for (StateAndRef<ContractState> produced : update.getProduced()) {
+                ContractState data = produced.getState().getData();
+                if (data instanceof LinearState) {
+                    entries.put(new Key(((LinearState) data).getLinearId(), data.getClass()), produced);
+                }
+            }
+        }
+    }
+
+    /**
+     * The cached unconsumed state with [linearId] of exactly type [clazz], or null on a miss.
+     */
+    @Nullable
+    public StateAndRef get(@NotNull UniqueIdentifier linearId, @NotNull Class clazz) {
+        StateAndRef<?> cached;
+        synchronized (entries) {
+            cached = entries.get(new Key(linearId, clazz));
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * Caches a state loaded from the vault after a miss.
+     */
+    public void put(@NotNull UniqueIdentifier linearId, @NotNull Class clazz, @NotNull StateAndRef stateAndRef) {
+        synchronized (entries) {
+            if (!consumedRefs.containsKey(stateAndRef.getRef())) {
+                entries.put(new Key(linearId, clazz), stateAndRef);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Key {
+        private final UniqueIdentifier linearId;
+        private final Class<?> clazz;
+
+        private Key(UniqueIdentifier linearId, Class<?> clazz) {
+            this.linearId = linearId;
+            this.clazz = clazz;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return linearId.equals(key.linearId) && clazz.equals(key.clazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(linearId, clazz);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.template.cordapp.services;
+
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.identity.PartyAndCertificate;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.IdentityService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.PublicKey;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of owning key to well-known [Party] in front of the [IdentityService], so that resolving the same
+ * confidential identities over and over does not go to the database each time.
+ *
+ * Only successful resolutions are cached. A key that maps to a well-known party keeps that mapping for good, and a key
+ * that is not known yet may be registered later, so the cache cannot go stale. Identities registered through
+ * [verifyAndRegisterIdentity] are cached as they are verified.
+ */
+@CordaService
+public final class WellKnownIdentityCacheService extends SingletonSerializeAsToken {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final IdentityService identityService;
+    private final Map<PublicKey, Party> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public WellKnownIdentityCacheService(@NotNull AppServiceHub serviceHub) {
+        this(serviceHub, DEFAULT_CAPACITY);
+    }
+
+    WellKnownIdentityCacheService(@NotNull AppServiceHub serviceHub, int capacity) {
+        this.identityService = serviceHub.getIdentityService();
+        this.entries = new LinkedHashMap<PublicKey, Party>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PublicKey, Party> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The well-known party behind [party], or null if this node cannot de-anonymise it.
+     */
+    @Nullable
+    public Party wellKnownPartyFromAnonymous(@NotNull AbstractParty party) {
+        PublicKey key = party.getOwningKey();
+        Party cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        Party resolved = identityService.wellKnownPartyFromAnonymous(party);
+        if (resolved != null) {
+            synchronized (entries) {
+                entries.put(key, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * As [wellKnownPartyFromAnonymous], but throws [IllegalArgumentException] if the party cannot be resolved.
+     */
+    @NotNull
+    public Party requireWellKnownPartyFromAnonymous(@NotNull AbstractParty party) {
+        Party resolved = wellKnownPartyFromAnonymous(party);
+        if (resolved == null) {
+            throw new IllegalArgumentException("Could not deanonymise party " + party.getOwningKey());
+        }
+        return resolved;
+    }
+
+    /**
+     * Verifies and registers [identity] with the [IdentityService] and caches the well-known party it resolves to.
+     */
+    public void verifyAndRegisterIdentity(@NotNull PartyAndCertificate identity)
+            throws CertificateExpiredException, CertificateNotYetValidException, InvalidAlgorithmParameterException {
+        identityService.verifyAndRegisterIdentity(identity);
+        Party resolved = identityService.wellKnownPartyFromAnonymous(identity.getParty());
+        if (resolved != null) {
+            synchronized (entries) {
+                entries.put(identity.getOwningKey(), resolved);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -2,24 +2,30 @@ package com.template.cordapp.state
 
 import com.synechron.cordapp.contract.AssetContract
 import com.template.cordapp.schema.AssetSchemaV1
+import com.template.cordapp.schema.AssetSchemaV2
 import net.corda.core.contracts.Amount
 import net.corda.core.contracts.CommandAndState
 import net.corda.core.contracts.OwnableState
 import net.corda.core.crypto.NullKeys
 import net.corda.core.identity.AbstractParty
+import net.corda.core.identity.Party
 import net.corda.core.schemas.MappedSchema
 import net.corda.core.schemas.PersistentState
 import net.corda.core.schemas.QueryableState
 import java.util.*
 
 /**
- * This states plays role of digital asset (i.e. bond, securities, stock, etc.) on ledger.
+ * This states plays role of digital asset (i.e. bond, securities, stock, etc.) on ledger. The [issuer] is the party that
+ * first put the asset on ledger; it stays fixed across transfers and must agree to any exit or re-issuance. Assets
+ * recorded before [issuer] was added deserialise without one; they can still be transferred, but not exited or
+ * re-issued.
  */
 //TODO Think of using [FungibleAsset] interface to implement [Asset] state.
 data class Asset(val cusip: String,
                  val assetName: String,
                  val purchaseCost: Amount<Currency>,
-                 override val owner: AbstractParty
+                 override val owner: AbstractParty,
+                 val issuer: Party? = null
 ) : OwnableState, QueryableState {
     override val participants: List<AbstractParty> = listOf(owner)
 
@@ -38,9 +44,17 @@ data class Asset(val cusip: String,
                     owner = this.owner,
                     participants = this.participants.toMutableSet()
             )
+            is AssetSchemaV2 -> AssetSchemaV2.PersistentAsset(
+                    cusip = this.cusip,
+                    assetName = this.assetName,
+                    purchaseCostQuantity = this.purchaseCost.quantity,
+                    purchaseCostCurrency = this.purchaseCost.token.currencyCode,
+                    owner = this.owner,
+                    participants = this.participants.toMutableSet()
+            )
             else -> throw IllegalArgumentException("Unrecognised schema $schema")
         }
     }
 
-    override fun supportedSchemas(): Iterable<MappedSchema> = setOf(AssetSchemaV1)
+    override fun supportedSchemas(): Iterable<MappedSchema> = setOf(AssetSchemaV1, AssetSchemaV2)
 }
\ No newline at end of file
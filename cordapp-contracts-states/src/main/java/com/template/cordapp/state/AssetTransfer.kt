@@ -1,6 +1,7 @@
 package com.template.cordapp.state
 
 import com.template.cordapp.schema.AssetTransferSchemaV1
+import com.template.cordapp.schema.AssetTransferSchemaV2
 import net.corda.core.contracts.LinearState
 import net.corda.core.contracts.UniqueIdentifier
 import net.corda.core.identity.AbstractParty
@@ -29,10 +30,19 @@ data class AssetTransfer(val asset: Asset,
                     participants = this.participants.toMutableSet(),
                     linearId = this.linearId.toString()
             )
+            is AssetTransferSchemaV2 -> AssetTransferSchemaV2.PersistentAssetTransfer(
+                    cusip = this.asset.cusip,
+                    securitySeller = this.securitySeller,
+                    securityBuyer = this.securityBuyer,
+                    clearingHouse = this.clearingHouse,
+                    statusCode = this.status.code,
+                    participants = this.participants.toMutableSet(),
+                    linearId = this.linearId.id
+            )
             else -> throw IllegalArgumentException("Unrecognised schema $schema")
         }
     }
 
-    override fun supportedSchemas(): Iterable<MappedSchema> = setOf(AssetTransferSchemaV1)
+    override fun supportedSchemas(): Iterable<MappedSchema> = setOf(AssetTransferSchemaV1, AssetTransferSchemaV2)
 }
 
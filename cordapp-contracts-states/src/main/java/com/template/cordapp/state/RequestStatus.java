@@ -7,16 +7,19 @@ import org.jetbrains.annotations.NotNull;
 
 @CordaSerializable
 public enum RequestStatus {
-    PENDING_CONFIRMATION("Pending Confirmation"), //Initial status
-    PENDING("Pending"), // updated by buyer
-    TRANSFERRED("Transferred"), // on valid asset data clearing house update this status
-    REJECTED("Rejected"), // on invalid asset data clearing house reject transaction with this status.
-    FAILED("Failed"); // on fail of settlement e.g. with insufficient cash from Buyer party.
+    PENDING_CONFIRMATION("Pending Confirmation", (short) 0), //Initial status
+    PENDING("Pending", (short) 1), // updated by buyer
+    TRANSFERRED("Transferred", (short) 2), // on valid asset data clearing house update this status
+    REJECTED("Rejected", (short) 3), // on invalid asset data clearing house reject transaction with this status.
+    FAILED("Failed", (short) 4); // on fail of settlement e.g. with insufficient cash from Buyer party.
 
     @JsonValue
     @NotNull
     private String value;
 
+    // Stable code persisted by [AssetTransferSchemaV2]; never reuse or renumber.
+    private short code;
+
     // getter method
     @NotNull
     public String getValue()
@@ -24,7 +27,13 @@ public enum RequestStatus {
         return this.value;
     }
 
-    RequestStatus(String value) {
+    public short getCode()
+    {
+        return this.code;
+    }
+
+    RequestStatus(String value, short code) {
         this.value = value;
+        this.code = code;
     }
 }
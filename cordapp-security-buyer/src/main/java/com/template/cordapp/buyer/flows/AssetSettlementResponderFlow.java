@@ -3,14 +3,20 @@ package com.template.cordapp.buyer.flows;
 import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.io.LittleEndianDataOutputStream;
 import com.template.cordapp.common.flows.IdentitySyncFlow;
+import com.template.cordapp.common.flows.LegProposal;
+import com.template.cordapp.common.flows.ReceiveSettlementRequestFlow;
+import com.template.cordapp.common.flows.SendLegProposalFlow;
 import com.template.cordapp.common.flows.SignTxFlow;
 import com.template.cordapp.flows.AbstractAssetSettlementFlow;
 import com.template.cordapp.state.AssetTransfer;
 import kotlin.Pair;
 import kotlin.collections.CollectionsKt;
 import kotlin.collections.SetsKt;
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.StateAndRef;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
 import net.corda.core.node.StatesToRecord;
 import net.corda.core.transactions.LedgerTransaction;
 import net.corda.core.transactions.SignedTransaction;
@@ -18,6 +24,7 @@ import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.UntrustworthyData;
 import net.corda.finance.contracts.asset.Cash;
+import net.corda.finance.contracts.asset.PartyAndAmount;
 
 
 import java.security.SignatureException;
@@ -26,6 +33,8 @@ import java.util.*;
 
 /**
  * Buyer review the received settlement transaction then issue the cash to `Seller` party.
+ * For a netted settlement of several [AssetTransfer]s a single cash leg is produced, paying each seller key the total
+ * purchase cost of the transfers that name it.
  */
 
 @InitiatedBy(AbstractAssetSettlementFlow.class)
@@ -54,37 +63,36 @@ public final class AssetSettlementResponderFlow extends FlowLogic<SignedTransact
 
         progressTracker.setCurrentStep(ADD_CASH);
 
-        SignedTransaction ptx1 = (SignedTransaction) this.subFlow((FlowLogic) (new ReceiveTransactionFlow(this.otherSideSession, false, StatesToRecord.NONE)));
-
-        LedgerTransaction ltx1 = null;
-        try {
-            ltx1 = ptx1.toLedgerTransaction(this.getServiceHub(), false);
-        } catch (SignatureException e) {
-            e.printStackTrace();
+        // The clearing house names the transfers it is settling. Check each against our own vault before any cash is
+        // selected for them.
+        List<StateAndRef<AssetTransfer>> transfers = subFlow(new ReceiveSettlementRequestFlow(otherSideSession,
+                ReceiveSettlementRequestFlow.Side.SECURITY_BUYER));
+        Party notary = transfers.get(0).getState().getNotary();
+        List<AssetTransfer> assetTransfers = new ArrayList<>(transfers.size());
+        for (StateAndRef<AssetTransfer> transfer : transfers) {
+            assetTransfers.add(transfer.getState().getData());
         }
 
-        Iterable inputState = ltx1.getInputStates();
-        Collection destinationAT = (new ArrayList());
-        Iterator instIterator = inputState.iterator();
-
-        while (instIterator.hasNext()) {
-            Object o = instIterator.next();
-            if (o instanceof AssetTransfer) {
-                destinationAT.add(o);
-            }
+        // A netted settlement is paid with one cash spend. Transfers requested separately name the seller by different
+        // confidential keys, and the contract matches cash per key, so each key is paid what its transfers cost.
+        Map<AbstractParty, Amount<Currency>> owedBySellerKey = new LinkedHashMap<>();
+        for (AssetTransfer assetTransfer : assetTransfers) {
+            owedBySellerKey.merge(assetTransfer.getSecuritySeller(), assetTransfer.getAsset().getPurchaseCost(), Amount::plus);
+        }
+        List<PartyAndAmount<Currency>> payments = new ArrayList<>(owedBySellerKey.size());
+        for (Map.Entry<AbstractParty, Amount<Currency>> owed : owedBySellerKey.entrySet()) {
+            payments.add(new PartyAndAmount<>(owed.getKey(), owed.getValue()));
         }
-
-        AssetTransfer assetTransfer = (AssetTransfer) CollectionsKt.singleOrNull((List) destinationAT);
 
         FlowSession flowSession = this.otherSideSession;
         UntrustworthyData<UUID> receiver = flowSession.receive(UUID.class);
         UUID it = receiver.getFromUntrustedWorld();
 
         Pair AB = Cash.generateSpend(this.getServiceHub(),
-                new TransactionBuilder(ltx1.getNotary()), //soft reserve the cash state.
-                assetTransfer.getAsset().getPurchaseCost(),
+                new TransactionBuilder(notary), //soft reserve the cash state.
+                payments,
                 this.getOurIdentityAndCert(),
-                assetTransfer.getSecuritySeller(), SetsKt.emptySet());
+                SetsKt.emptySet());
 
         TransactionBuilder txbWithCash = (TransactionBuilder) AB.component1();
 
@@ -92,10 +100,8 @@ public final class AssetSettlementResponderFlow extends FlowLogic<SignedTransact
 
         List cashSignKeys = (List) AB.component2();
 
-        SignedTransaction ptx2 = this.getServiceHub().signInitialTransaction(txbWithCash);
-
-        subFlow(new net.corda.confidential.IdentitySyncFlow.Send(this.otherSideSession, ptx2.getTx()));
-        subFlow((FlowLogic) (new SendTransactionFlow(this.otherSideSession, ptx2)));
+        subFlow(new IdentitySyncFlow.Send(this.otherSideSession, txbWithCash.toWireTransaction(getServiceHub())));
+        subFlow(new SendLegProposalFlow(this.otherSideSession, LegProposal.of(txbWithCash)));
 
         progressTracker.setCurrentStep(SYNC_IDENTITY);
         subFlow((FlowLogic) (new IdentitySyncFlow.Receive(this.otherSideSession)));
@@ -5,6 +5,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.template.cordapp.common.exception.InvalidPartyException;
 import com.template.cordapp.common.flows.IdentitySyncFlow;
+import com.template.cordapp.common.services.ConfidentialIdentityPoolService;
+import com.template.cordapp.common.services.NotarySelectionService;
 import com.template.cordapp.contract.AssetTransferContract;
 import com.template.cordapp.flows.AbstractConfirmAssetTransferRequestFlow;
 import com.template.cordapp.state.Asset;
@@ -12,6 +14,7 @@ import com.template.cordapp.state.AssetTransfer;
 import com.template.cordapp.state.RequestStatus;
 import java.security.PublicKey;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 import kotlin.collections.CollectionsKt;
@@ -95,9 +98,10 @@ public class ConfirmAssetTransferRequestInitiatorFlow extends AbstractConfirmAss
 
         progressTracker.setCurrentStep(SWAP_IDENTITY);
 
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
-
-        LinkedHashMap txKeys = subFlow(new SwapIdentitiesFlow(clearingHouse));
+        LinkedHashMap txKeys = getServiceHub().cordaService(ConfidentialIdentityPoolService.class).take(clearingHouse);
+        if (txKeys == null) {
+            txKeys = subFlow(new SwapIdentitiesFlow(clearingHouse));
+        }
         boolean size = txKeys.size() == 2;
         if (!size) {
             String illegalState = "Something went wrong when generating confidential identities.";
@@ -114,6 +118,7 @@ public class ConfirmAssetTransferRequestInitiatorFlow extends AbstractConfirmAss
         progressTracker.setCurrentStep(INITIALISING);
 
         StateAndRef<AssetTransfer> input = this.loadState(this.getServiceHub(), this.linearId, AssetTransfer.class);
+        Party notary = input.getState().getNotary();
 
         Collection participants1 = input.getState().getData().getParticipants();
         Intrinsics.checkExpressionValueIsNotNull(anonymousCustodian, "anonymousCustodian");
@@ -212,7 +217,10 @@ public class ConfirmAssetTransferRequestInitiatorFlow extends AbstractConfirmAss
 
 
         progressTracker.setCurrentStep(FINALISING);
-        return subFlow(new FinalityFlow(fullySignedTx,FINALISING.childProgressTracker()));
+        Instant finalityStarted = getServiceHub().getClock().instant();
+        SignedTransaction finalTxn = subFlow(new FinalityFlow(fullySignedTx,FINALISING.childProgressTracker()));
+        getServiceHub().cordaService(NotarySelectionService.class).recordFinality(notary, finalityStarted);
+        return finalTxn;
 
 
     }
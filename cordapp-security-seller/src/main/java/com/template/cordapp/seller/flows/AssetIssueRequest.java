@@ -0,0 +1,47 @@
+package com.template.cordapp.seller.flows;
+
+import net.corda.core.contracts.Amount;
+import net.corda.core.serialization.CordaSerializable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Currency;
+
+/**
+ * One row of a batch issuance: the data needed to create a single [Asset] state.
+ */
+@CordaSerializable
+public final class AssetIssueRequest {
+
+    @NotNull
+    private final String cusip;
+    @NotNull
+    private final String assetName;
+    @NotNull
+    private final Amount<Currency> purchaseCost;
+
+    public AssetIssueRequest(@NotNull String cusip, @NotNull String assetName, @NotNull Amount<Currency> purchaseCost) {
+        this.cusip = cusip;
+        this.assetName = assetName;
+        this.purchaseCost = purchaseCost;
+    }
+
+    @NotNull
+    public String getCusip() {
+        return cusip;
+    }
+
+    @NotNull
+    public String getAssetName() {
+        return assetName;
+    }
+
+    @NotNull
+    public Amount<Currency> getPurchaseCost() {
+        return purchaseCost;
+    }
+
+    @Override
+    public String toString() {
+        return "AssetIssueRequest(cusip=" + cusip + ", assetName=" + assetName + ", purchaseCost=" + purchaseCost + ")";
+    }
+}
@@ -0,0 +1,71 @@
+package com.template.cordapp.seller.flows;
+
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.serialization.CordaSerializable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Outcome of one [AssetIssueRequest] row. Issued rows carry the id of the transaction that created the [Asset],
+ * rejected rows carry the reason they were left out of the batch.
+ */
+@CordaSerializable
+public final class AssetIssueResult {
+
+    @CordaSerializable
+    public enum Status {
+        ISSUED,
+        REJECTED
+    }
+
+    @NotNull
+    private final String cusip;
+    @NotNull
+    private final Status status;
+    @Nullable
+    private final SecureHash txId;
+    @Nullable
+    private final String message;
+
+    public AssetIssueResult(@NotNull String cusip, @NotNull Status status, @Nullable SecureHash txId, @Nullable String message) {
+        this.cusip = cusip;
+        this.status = status;
+        this.txId = txId;
+        this.message = message;
+    }
+
+    @NotNull
+    public static AssetIssueResult issued(@NotNull String cusip, @NotNull SecureHash txId) {
+        return new AssetIssueResult(cusip, Status.ISSUED, txId, null);
+    }
+
+    @NotNull
+    public static AssetIssueResult rejected(@NotNull String cusip, @NotNull String message) {
+        return new AssetIssueResult(cusip, Status.REJECTED, null, message);
+    }
+
+    @NotNull
+    public String getCusip() {
+        return cusip;
+    }
+
+    @NotNull
+    public Status getStatus() {
+        return status;
+    }
+
+    @Nullable
+    public SecureHash getTxId() {
+        return txId;
+    }
+
+    @Nullable
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "AssetIssueResult(cusip=" + cusip + ", status=" + status + ", txId=" + txId + ", message=" + message + ")";
+    }
+}
@@ -3,6 +3,10 @@ package com.template.cordapp.seller.flows;
 import co.paralleluniverse.fibers.Suspendable;
 import com.synechron.cordapp.contract.AssetContract;
 import com.template.cordapp.common.exception.TooManyStatesFoundException;
+import com.template.cordapp.common.flows.IdentitySyncFlow;
+import com.template.cordapp.common.flows.LegProposal;
+import com.template.cordapp.common.flows.ReceiveSettlementRequestFlow;
+import com.template.cordapp.common.flows.SendLegProposalFlow;
 import com.template.cordapp.common.flows.SignTxFlow;
 import com.template.cordapp.flows.AbstractAssetSettlementFlow;
 import com.template.cordapp.flows.FlowLogicCommonMethods;
@@ -12,7 +16,6 @@ import com.template.cordapp.state.AssetTransfer;
 import com.template.cordapp.utils.UtilsKt;
 import kotlin.collections.CollectionsKt;
 import kotlin.jvm.internal.Intrinsics;
-import net.corda.confidential.IdentitySyncFlow;
 import net.corda.core.contracts.*;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
@@ -27,16 +30,15 @@ import net.corda.core.utilities.ProgressTracker;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Signed;
+import java.security.PublicKey;
 import java.security.SignatureException;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 /**
  * Seller review the received settlement transaction then create and send new temporary transaction
  * to send input, output [Asset] states and command to change ownership to `Buyer` party.
+ * A netted settlement carries several [AssetTransfer]s; every corresponding [Asset] goes into the one asset leg.
  */
 
 @InitiatedBy(AbstractAssetSettlementFlow.class)
@@ -71,46 +73,46 @@ public final class AssetSettlementResponderFlow extends FlowLogic<SignedTransact
    public SignedTransaction call() throws FlowException {
 
       progressTracker.setCurrentStep(ADD_ASSET);
-      Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
 
-      SignedTransaction ptx1 = (SignedTransaction) this.subFlow((FlowLogic) (new ReceiveTransactionFlow(this.otherSideSession, false, StatesToRecord.NONE)));
-
-      LedgerTransaction ltx1 = null;
-      try {
-         ltx1 = ptx1.toLedgerTransaction(this.getServiceHub(), false);
-      } catch (SignatureException e) {
-         e.printStackTrace();
+      // The clearing house names the transfers it is settling. Check each against our own vault before any asset is
+      // offered for them.
+      List<StateAndRef<AssetTransfer>> transfers = subFlow(new ReceiveSettlementRequestFlow(otherSideSession,
+              ReceiveSettlementRequestFlow.Side.SECURITY_SELLER));
+      Party notary = transfers.get(0).getState().getNotary();
+      List<AssetTransfer> assetTransfers = new ArrayList<>(transfers.size());
+      for (StateAndRef<AssetTransfer> transfer : transfers) {
+         assetTransfers.add(transfer.getState().getData());
       }
 
-      Iterable inputState= ltx1.getInputStates();
-      Collection destinationAT = (new ArrayList());
-      Iterator instIterator = inputState.iterator();
-
-      while (instIterator.hasNext()) {
-         Object o = instIterator.next();
-         if (o instanceof AssetTransfer) {
-            destinationAT.add(o);
-         }
+      List<String> cusips = new ArrayList<>(assetTransfers.size());
+      for (AssetTransfer assetTransfer : assetTransfers) {
+         cusips.add(assetTransfer.getAsset().getCusip());
       }
+      Map<String, StateAndRef<Asset>> assets = UtilsKt.getAssetsByCusips(getServiceHub(), cusips);
 
-      AssetTransfer assetTransfer = (AssetTransfer) CollectionsKt.singleOrNull((List) destinationAT);
-
-      StateAndRef assetStateAndRef = UtilsKt.getAssetByCusip(getServiceHub(),assetTransfer.getAsset().getCusip());
-
-      CommandAndState cmdState = ((Asset)assetStateAndRef.getState().getData()).withNewOwner(assetTransfer.getSecurityBuyer());
-      CommandData cmd = cmdState.component1();
-      OwnableState assetOutState = cmdState.component2();
+      // The asset leg is merged into the clearing house's transaction, so it must use the transfers' notary.
+      TransactionBuilder txBuilder = new TransactionBuilder(notary);
+      Set<PublicKey> newOwnerKeys = new LinkedHashSet<>();
+      CommandData cmd = null;
 
+      for (AssetTransfer assetTransfer : assetTransfers) {
+         StateAndRef<Asset> assetStateAndRef = assets.get(assetTransfer.getAsset().getCusip());
+         if (!assetStateAndRef.getState().getNotary().equals(notary)) {
+            throw new FlowException("Asset " + assetTransfer.getAsset().getCusip() + " is not on the settlement notary " + notary.getName() + ".");
+         }
 
-      TransactionBuilder txBuilder = new TransactionBuilder(notary)
-              .addInputState(assetStateAndRef)
-              .addOutputState(assetOutState, AssetContract.ASSET_CONTRACT_ID)
-              .addCommand(cmd, assetOutState.getOwner().getOwningKey());
+         CommandAndState cmdState = assetStateAndRef.getState().getData().withNewOwner(assetTransfer.getSecurityBuyer());
+         cmd = cmdState.component1();
+         OwnableState assetOutState = cmdState.component2();
 
+         txBuilder.addInputState(assetStateAndRef)
+                 .addOutputState(assetOutState, AssetContract.ASSET_CONTRACT_ID);
+         newOwnerKeys.add(assetOutState.getOwner().getOwningKey());
+      }
 
-      SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+      txBuilder.addCommand(cmd, new ArrayList<>(newOwnerKeys));
 
-      this.subFlow((new SendTransactionFlow(otherSideSession, signedTx)));
+      this.subFlow(new SendLegProposalFlow(otherSideSession, LegProposal.of(txBuilder)));
 
       progressTracker.setCurrentStep(SYNC_IDENTITY);
 
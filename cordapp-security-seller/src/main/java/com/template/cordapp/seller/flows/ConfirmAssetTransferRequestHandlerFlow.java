@@ -3,7 +3,7 @@ package com.template.cordapp.seller.flows;
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.cordapp.common.flows.SignTxFlow;
 import com.template.cordapp.flows.AbstractConfirmAssetTransferRequestFlow;
-import net.corda.confidential.IdentitySyncFlow;
+import com.template.cordapp.common.flows.IdentitySyncFlow;
 import net.corda.core.flows.*;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.utilities.ProgressTracker;
@@ -2,6 +2,7 @@ package com.template.cordapp.seller.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.synechron.cordapp.contract.AssetContract;
+import com.template.cordapp.common.services.NotarySelectionService;
 import com.template.cordapp.state.Asset;
 import net.corda.core.contracts.*;
 import net.corda.core.flows.*;
@@ -11,6 +12,14 @@ import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Create the [Asset] state on ledger. This state acting as security/bond on ledger which going to be sold for cash.
@@ -66,14 +75,15 @@ public class CreateAssetStateFlow {
         @Override
         public SignedTransaction call() throws FlowException {
 
-            Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            NotarySelectionService notarySelection = getServiceHub().cordaService(NotarySelectionService.class);
+            Party notary = notarySelection.select(cusip);
             final Command<AssetContract.Commands.Create> command = new Command<>(new AssetContract.Commands.Create(), getOurIdentity().getOwningKey());
 
             progressTracker.setCurrentStep(INITIALISING);
 
             System.out.println(getOurIdentity());
 
-            Asset asset = new Asset(cusip, assetName, purchaseCost, getOurIdentity());
+            Asset asset = new Asset(cusip, assetName, purchaseCost, getOurIdentity(), getOurIdentity());
 
             progressTracker.setCurrentStep(BUILDING);
 
@@ -86,11 +96,155 @@ public class CreateAssetStateFlow {
             SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
 
             progressTracker.setCurrentStep(FINALISING);
+            Instant finalityStarted = getServiceHub().getClock().instant();
             SignedTransaction finalTxn;
             finalTxn = subFlow(new FinalityFlow(signedTx, FINALISING.childProgressTracker()));
+            notarySelection.recordFinality(notary, finalityStarted);
             return finalTxn;
 
         }
     }
-}
 
+    /**
+     * Issues a batch of [Asset] states. Accepted rows are grouped by the notary [NotarySelectionService] picks for
+     * their CUSIP and each group is packed into as few [AssetContract.Commands.Create] transactions as
+     * [maxStatesPerTransaction] allows; every chunk is verified up front and then signed and finalised in turn. A chunk
+     * that fails finality rejects its rows rather than the whole batch. Returns one [AssetIssueResult] per row, in the
+     * order the rows were given. Callers that want chunks notarised side by side run several batches at once.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    public static class BatchInitiator extends FlowLogic<List<AssetIssueResult>> {
+
+        public static final int DEFAULT_MAX_STATES_PER_TRANSACTION = 500;
+
+        private final List<AssetIssueRequest> rows;
+        private final int maxStatesPerTransaction;
+
+        private final ProgressTracker.Step INITIALISING = new ProgressTracker.Step("Validating batch rows");
+        private final ProgressTracker.Step BUILDING = new ProgressTracker.Step("Building and verifying chunk transactions");
+        private final ProgressTracker.Step FINALISING = new ProgressTracker.Step("Signing and finalising chunk transactions");
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                INITIALISING,
+                BUILDING,
+                FINALISING
+        );
+
+        public BatchInitiator(List<AssetIssueRequest> rows, int maxStatesPerTransaction) {
+            this.rows = rows;
+            this.maxStatesPerTransaction = maxStatesPerTransaction;
+        }
+
+        public BatchInitiator(List<AssetIssueRequest> rows) {
+            this(rows, DEFAULT_MAX_STATES_PER_TRANSACTION);
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        /**
+         * Notarises and records one signed chunk, throwing if the notary rejects it or finality fails.
+         */
+        @Suspendable
+        protected SignedTransaction finaliseChunk(SignedTransaction signedChunk) throws FlowException {
+            Instant finalityStarted = getServiceHub().getClock().instant();
+            SignedTransaction finalTxn = subFlow(new FinalityFlow(signedChunk));
+            getServiceHub().cordaService(NotarySelectionService.class).recordFinality(signedChunk.getNotary(), finalityStarted);
+            return finalTxn;
+        }
+
+        @Suspendable
+        @Override
+        public List<AssetIssueResult> call() throws FlowException {
+
+            if (maxStatesPerTransaction <= 0) {
+                throw new FlowException("Batch size cap must be positive, was " + maxStatesPerTransaction + ".");
+            }
+
+            NotarySelectionService notarySelection = getServiceHub().cordaService(NotarySelectionService.class);
+
+            progressTracker.setCurrentStep(INITIALISING);
+
+            AssetIssueResult[] results = new AssetIssueResult[rows.size()];
+            List<Integer> accepted = new ArrayList<>(rows.size());
+            Set<String> seenCusips = new HashSet<>(rows.size() * 2);
+
+            for (int i = 0; i < rows.size(); i++) {
+                AssetIssueRequest row = rows.get(i);
+                String cusip = row.getCusip();
+                if (cusip.trim().isEmpty()) {
+                    results[i] = AssetIssueResult.rejected(cusip, "CUSIP must not be empty.");
+                } else if (!seenCusips.add(cusip)) {
+                    results[i] = AssetIssueResult.rejected(cusip, "Duplicate CUSIP within the batch.");
+                } else if (row.getPurchaseCost().getQuantity() <= 0) {
+                    results[i] = AssetIssueResult.rejected(cusip, "Purchase cost must be positive.");
+                } else {
+                    accepted.add(i);
+                }
+            }
+
+            progressTracker.setCurrentStep(BUILDING);
+
+            Map<Party, List<Integer>> rowsByNotary = new LinkedHashMap<>();
+            for (Integer i : accepted) {
+                rowsByNotary.computeIfAbsent(notarySelection.select(rows.get(i).getCusip()), n -> new ArrayList<>()).add(i);
+            }
+
+            List<List<Integer>> chunkRows = new ArrayList<>();
+            List<Party> chunkNotaries = new ArrayList<>();
+            for (Map.Entry<Party, List<Integer>> group : rowsByNotary.entrySet()) {
+                List<Integer> groupRows = group.getValue();
+                for (int from = 0; from < groupRows.size(); from += maxStatesPerTransaction) {
+                    chunkRows.add(new ArrayList<>(groupRows.subList(from, Math.min(from + maxStatesPerTransaction, groupRows.size()))));
+                    chunkNotaries.add(group.getKey());
+                }
+            }
+
+            List<TransactionBuilder> chunkBuilders = new ArrayList<>(chunkRows.size());
+            for (int c = 0; c < chunkRows.size(); c++) {
+                final Command<AssetContract.Commands.Create> command = new Command<>(new AssetContract.Commands.Create(), getOurIdentity().getOwningKey());
+                TransactionBuilder txBuilder = new TransactionBuilder(chunkNotaries.get(c))
+                        .addCommand(command)
+                        .setTimeWindow(getServiceHub().getClock().instant(), Duration.ofSeconds(60));
+
+                for (Integer i : chunkRows.get(c)) {
+                    AssetIssueRequest row = rows.get(i);
+                    Asset asset = new Asset(row.getCusip(), row.getAssetName(), row.getPurchaseCost(), getOurIdentity(), getOurIdentity());
+                    txBuilder.addOutputState(asset, AssetContract.ASSET_CONTRACT_ID);
+                }
+
+                // Verify locally so that finalising a chunk cannot fail contract checks.
+                txBuilder.verify(getServiceHub());
+
+                chunkBuilders.add(txBuilder);
+            }
+
+            progressTracker.setCurrentStep(FINALISING);
+
+            // Chunks are signed just before they are finalised so that each time window is fresh when it reaches the
+            // notary. A chunk that fails notarisation or finality rejects its own rows only.
+            for (int c = 0; c < chunkBuilders.size(); c++) {
+                TransactionBuilder txBuilder = chunkBuilders.get(c)
+                        .setTimeWindow(getServiceHub().getClock().instant(), Duration.ofSeconds(60));
+                SignedTransaction signedChunk = getServiceHub().signInitialTransaction(txBuilder);
+                try {
+                    SignedTransaction finalTxn = finaliseChunk(signedChunk);
+                    for (Integer i : chunkRows.get(c)) {
+                        results[i] = AssetIssueResult.issued(rows.get(i).getCusip(), finalTxn.getId());
+                    }
+                } catch (FlowException e) {
+                    getLogger().warn("Finality of chunk " + signedChunk.getId() + " failed", e);
+                    String message = "Finality failed: " + e.getMessage();
+                    for (Integer i : chunkRows.get(c)) {
+                        results[i] = AssetIssueResult.rejected(rows.get(i).getCusip(), message);
+                    }
+                }
+            }
+
+            return Arrays.asList(results);
+        }
+    }
+}
@@ -4,12 +4,15 @@ import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.template.cordapp.common.exception.InvalidPartyException;
+import com.template.cordapp.common.services.ConfidentialIdentityPoolService;
+import com.template.cordapp.common.services.NotarySelectionService;
 import com.template.cordapp.contract.AssetTransferContract;
 import com.template.cordapp.flows.AbstractCreateAssetTransferRequestFlow;
 import com.template.cordapp.state.Asset;
 import com.template.cordapp.state.AssetTransfer;
 import java.security.PublicKey;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 import com.template.cordapp.utils.UtilsKt;
@@ -86,11 +89,12 @@ public class CreateAssetTransferRequestInitiatorFlow extends AbstractCreateAsset
    @Override
    public SignedTransaction call() throws FlowException {
 
-      Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
-
       if (getOurIdentity().getName() == securityBuyer.getName()) throw new InvalidPartyException("Flow initiating party should not equal to Lender of Cash party.");
 
-      LinkedHashMap txKeys = subFlow(new SwapIdentitiesFlow(securityBuyer));
+      LinkedHashMap txKeys = getServiceHub().cordaService(ConfidentialIdentityPoolService.class).take(securityBuyer);
+      if (txKeys == null) {
+         txKeys = subFlow(new SwapIdentitiesFlow(securityBuyer));
+      }
       boolean size = txKeys.size() == 2;
       if(!size)
       {
@@ -108,7 +112,11 @@ public class CreateAssetTransferRequestInitiatorFlow extends AbstractCreateAsset
          throw new FlowException("Couldn't create lender's (securityBuyer) anonymous identity.");
       }
 
-      Asset asset = (Asset) UtilsKt.getAssetByCusip(getServiceHub(), this.cusip).getState().getData();
+      StateAndRef<Asset> assetStateAndRef = UtilsKt.getAssetByCusip(getServiceHub(), this.cusip);
+      Asset asset = assetStateAndRef.getState().getData();
+
+      // The request is settled in one transaction with the asset, so it must live on the asset's notary.
+      Party notary = assetStateAndRef.getState().getNotary();
 
       Collection participants1 = Collections.singleton(anonymousMe);
 
@@ -141,7 +149,10 @@ public class CreateAssetTransferRequestInitiatorFlow extends AbstractCreateAsset
 
       progressTracker.setCurrentStep(FINALISING);
 
-      return subFlow(new FinalityFlow(fullySignedTx,FINALISING.childProgressTracker()));
+      Instant finalityStarted = getServiceHub().getClock().instant();
+      SignedTransaction finalTxn = subFlow(new FinalityFlow(fullySignedTx,FINALISING.childProgressTracker()));
+      getServiceHub().cordaService(NotarySelectionService.class).recordFinality(notary, finalityStarted);
+      return finalTxn;
 
 
    }
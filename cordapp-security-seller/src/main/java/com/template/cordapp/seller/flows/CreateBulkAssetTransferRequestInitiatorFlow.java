@@ -0,0 +1,163 @@
+package com.template.cordapp.seller.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.cordapp.common.exception.InvalidPartyException;
+import com.template.cordapp.common.services.ConfidentialIdentityPoolService;
+import com.template.cordapp.common.services.NotarySelectionService;
+import com.template.cordapp.contract.AssetTransferContract;
+import com.template.cordapp.flows.AbstractCreateAssetTransferRequestFlow;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.state.AssetTransfer;
+import com.template.cordapp.utils.UtilsKt;
+import net.corda.confidential.SwapIdentitiesFlow;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static com.template.cordapp.state.RequestStatus.PENDING_CONFIRMATION;
+
+/**
+ * Bulk variant of [CreateAssetTransferRequestInitiatorFlow]: the seller offers many [Asset]s to the same buyer in one
+ * run. Identities are swapped once, all assets are loaded with a single vault query and every [AssetTransfer] is
+ * created under one [AssetTransferContract.Commands.CreateRequest] command, so the buyer signs once for the whole lot.
+ */
+
+// ******************
+// * Initiator flow *
+@StartableByRPC
+public class CreateBulkAssetTransferRequestInitiatorFlow extends AbstractCreateAssetTransferRequestFlow {
+
+   private final List<String> cusips;
+   private final Party securityBuyer;
+
+   private final ProgressTracker.Step SWAP_IDENTITY = new ProgressTracker.Step("Swap Identity");
+   private final ProgressTracker.Step INITIALISING = new ProgressTracker.Step("Performing initial steps");
+   private final ProgressTracker.Step BUILDING = new ProgressTracker.Step("Building and verifying transaction");
+   private final ProgressTracker.Step SIGNING = new ProgressTracker.Step("Signing transaction");
+   private final ProgressTracker.Step COLLECTING = new ProgressTracker.Step("Collecting counter-party signature") {
+      @Override
+      public ProgressTracker childProgressTracker() {
+         return CollectSignaturesFlow.Companion.tracker();
+      }
+   };
+   private final ProgressTracker.Step FINALISING = new ProgressTracker.Step("Finalising transaction") {
+      @Override
+      public ProgressTracker childProgressTracker() {
+         return FinalityFlow.Companion.tracker();
+      }
+   };
+
+   /**
+    * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+    */
+
+   private final ProgressTracker progressTracker = new ProgressTracker(
+           SWAP_IDENTITY,
+           INITIALISING,
+           BUILDING,
+           SIGNING,
+           COLLECTING,
+           FINALISING
+   );
+
+   @Override
+   public ProgressTracker getProgressTracker() {
+      return progressTracker;
+   }
+
+   public CreateBulkAssetTransferRequestInitiatorFlow(List<String> cusips, Party securityBuyer) {
+      this.cusips = cusips;
+      this.securityBuyer = securityBuyer;
+   }
+
+   /**
+    * The flow logic is encapsulated within the call() method.
+    */
+   @Suspendable
+   @Override
+   public SignedTransaction call() throws FlowException {
+
+      if (getOurIdentity().getName().equals(securityBuyer.getName())) throw new InvalidPartyException("Flow initiating party should not equal to Lender of Cash party.");
+      if (cusips.isEmpty()) throw new FlowException("At least one CUSIP must be given.");
+      if (new HashSet<>(cusips).size() != cusips.size()) throw new FlowException("CUSIPs must not repeat within one request.");
+
+      progressTracker.setCurrentStep(SWAP_IDENTITY);
+
+      LinkedHashMap txKeys = getServiceHub().cordaService(ConfidentialIdentityPoolService.class).take(securityBuyer);
+      if (txKeys == null) {
+         txKeys = subFlow(new SwapIdentitiesFlow(securityBuyer));
+      }
+      if (txKeys.size() != 2) {
+         throw new IllegalStateException("Something went wrong when generating confidential identities.");
+      }
+
+      AnonymousParty anonymousMe = (AnonymousParty) txKeys.get(this.getOurIdentity());
+      if (anonymousMe == null) {
+         throw new FlowException("Couldn't create our anonymous identity.");
+      }
+
+      AnonymousParty anonymousCashLender = (AnonymousParty) txKeys.get(this.securityBuyer);
+      if (anonymousCashLender == null) {
+         throw new FlowException("Couldn't create lender's (securityBuyer) anonymous identity.");
+      }
+
+      progressTracker.setCurrentStep(INITIALISING);
+
+      Map<String, StateAndRef<Asset>> assets = UtilsKt.getAssetsByCusips(getServiceHub(), cusips);
+
+      // Requests are settled together with their assets, so they must all share the assets' notary.
+      Party notary = assets.get(cusips.get(0)).getState().getNotary();
+      for (StateAndRef<Asset> asset : assets.values()) {
+         if (!asset.getState().getNotary().equals(notary)) {
+            throw new FlowException("Assets in one bulk request must share a notary; " + asset.getState().getData().getCusip() + " is on " + asset.getState().getNotary().getName() + ".");
+         }
+      }
+
+      List<AbstractParty> participants = Arrays.asList(anonymousMe, anonymousCashLender);
+
+      List<PublicKey> requiredSigners = Arrays.asList(getOurIdentity().getOwningKey(), securityBuyer.getOwningKey());
+
+      final Command<AssetTransferContract.Commands.CreateRequest> command = new Command<>(
+              new AssetTransferContract.Commands.CreateRequest(), requiredSigners);
+
+      progressTracker.setCurrentStep(BUILDING);
+
+      TransactionBuilder txBuilder = new TransactionBuilder(notary)
+              .addCommand(command)
+              .setTimeWindow(getServiceHub().getClock().instant(), Duration.ofSeconds(30));
+
+      for (String cusip : cusips) {
+         Asset asset = assets.get(cusip).getState().getData();
+         AssetTransfer assetTransfer = new AssetTransfer(asset, anonymousMe, anonymousCashLender, null, PENDING_CONFIRMATION, participants, new UniqueIdentifier());
+         txBuilder.addOutputState(assetTransfer, AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID);
+      }
+
+      progressTracker.setCurrentStep(SIGNING);
+      SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+      FlowSession otherPartySession = initiateFlow(securityBuyer);
+
+      progressTracker.setCurrentStep(COLLECTING);
+      final SignedTransaction fullySignedTx = subFlow(
+              new CollectSignaturesFlow(signedTx, Collections.singletonList(otherPartySession), CollectSignaturesFlow.tracker()));
+
+      progressTracker.setCurrentStep(FINALISING);
+
+      Instant finalityStarted = getServiceHub().getClock().instant();
+      SignedTransaction finalTxn = subFlow(new FinalityFlow(fullySignedTx, FINALISING.childProgressTracker()));
+      getServiceHub().cordaService(NotarySelectionService.class).recordFinality(notary, finalityStarted);
+      return finalTxn;
+   }
+}
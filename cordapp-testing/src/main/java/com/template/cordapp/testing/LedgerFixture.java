@@ -0,0 +1,221 @@
+package com.template.cordapp.testing;
+
+import com.synechron.cordapp.contract.AssetContract;
+import com.template.cordapp.contract.AssetTransferContract;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.state.AssetTransfer;
+import com.template.cordapp.state.RequestStatus;
+import net.corda.core.contracts.*;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.utilities.OpaqueBytes;
+import net.corda.finance.Currencies;
+import net.corda.finance.contracts.asset.Cash;
+import net.corda.testing.core.TestIdentity;
+
+import java.security.PublicKey;
+import java.util.*;
+
+/**
+ * Builds [LedgerTransaction]s of a given number of legs for every [AssetContract] and [AssetTransferContract] command,
+ * for the contract tests and benchmarks alike. Transactions are assembled directly from [TestIdentity] parties, so
+ * calling `verify` on them exercises the contract alone and not signature checks or dependency resolution.
+ */
+public final class LedgerFixture {
+
+    private static final long LEG_COST = 100_00L;
+    private static final int SELLERS = 20;
+
+    private final Party notary = new TestIdentity(new CordaX500Name("Notary", "London", "GB")).getParty();
+    private final Party issuer = new TestIdentity(new CordaX500Name("Issuer", "London", "GB")).getParty();
+    private final Party buyer = new TestIdentity(new CordaX500Name("Buyer", "New York", "US")).getParty();
+    private final Party clearingHouse = new TestIdentity(new CordaX500Name("Clearing House", "London", "GB")).getParty();
+    private final List<Party> sellers = new ArrayList<>(SELLERS);
+    private final SecureHash inputTx = SecureHash.randomSHA256();
+
+    public LedgerFixture() {
+        for (int i = 0; i < SELLERS; i++) {
+            sellers.add(new TestIdentity(new CordaX500Name("Seller " + i, "London", "GB")).getParty());
+        }
+    }
+
+    /** [AssetContract.Commands.Create] of [legs] new assets. */
+    public LedgerTransaction assetCreate(int legs) {
+        Builder tx = new Builder(new AssetContract.Commands.Create());
+        for (int i = 0; i < legs; i++) {
+            tx.output(asset(i, issuer), AssetContract.ASSET_CONTRACT_ID).signer(issuer);
+        }
+        return tx.build();
+    }
+
+    /** [AssetContract.Commands.Transfer] of [legs] assets spread over the sellers, each paid on its own. */
+    public LedgerTransaction assetTransfer(int legs) {
+        return assetTransfer(legs, false, Collections.emptyMap());
+    }
+
+    /**
+     * [AssetContract.Commands.Transfer] of [legs] assets spread over the sellers. Each leg is paid on its own, or each
+     * seller once with [nettedPayment]. [adjustments] is added to one payment of each seller named in it. The inputs
+     * alternate between each leg's asset and its transfer.
+     */
+    public LedgerTransaction assetTransfer(int legs, boolean nettedPayment, Map<Party, Long> adjustments) {
+        Builder tx = new Builder(new AssetContract.Commands.Transfer());
+        Map<Party, Long> owed = new LinkedHashMap<>();
+        Set<Party> adjusted = new HashSet<>();
+        for (int i = 0; i < legs; i++) {
+            Party seller = seller(i);
+            Asset asset = asset(i, seller);
+            tx.input(asset, AssetContract.ASSET_CONTRACT_ID)
+                    .input(transfer(asset, seller, RequestStatus.PENDING), AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID)
+                    .output(asset.copy(asset.getCusip(), asset.getAssetName(), asset.getPurchaseCost(), buyer, issuer), AssetContract.ASSET_CONTRACT_ID)
+                    .signer(buyer);
+            owed.merge(seller, LEG_COST, Long::sum);
+            if (!nettedPayment) {
+                long adjustment = adjustments.containsKey(seller) && adjusted.add(seller) ? adjustments.get(seller) : 0L;
+                tx.output(cash(seller, LEG_COST + adjustment), Cash.PROGRAM_ID);
+            }
+        }
+        if (nettedPayment) {
+            for (Map.Entry<Party, Long> entry : owed.entrySet()) {
+                tx.output(cash(entry.getKey(), entry.getValue() + adjustments.getOrDefault(entry.getKey(), 0L)), Cash.PROGRAM_ID);
+            }
+        }
+        return tx.build();
+    }
+
+    /** [AssetContract.Commands.Exit] of [legs] assets. */
+    public LedgerTransaction assetExit(int legs) {
+        Builder tx = new Builder(new AssetContract.Commands.Exit());
+        for (int i = 0; i < legs; i++) {
+            Party seller = seller(i);
+            tx.input(asset(i, seller), AssetContract.ASSET_CONTRACT_ID).signer(seller).signer(issuer);
+        }
+        return tx.build();
+    }
+
+    /** [AssetContract.Commands.Reissue] of [legs] assets. */
+    public LedgerTransaction assetReissue(int legs) {
+        Builder tx = new Builder(new AssetContract.Commands.Reissue(inputTx));
+        for (int i = 0; i < legs; i++) {
+            Party owner = seller(i);
+            tx.output(asset(i, owner), AssetContract.ASSET_CONTRACT_ID).signer(issuer).signer(owner);
+        }
+        return tx.build();
+    }
+
+    /** [AssetTransferContract.Commands.CreateRequest] proposing [legs] transfers. */
+    public LedgerTransaction transferCreateRequest(int legs) {
+        Builder tx = new Builder(new AssetTransferContract.Commands.CreateRequest());
+        for (int i = 0; i < legs; i++) {
+            Party seller = seller(i);
+            tx.output(transfer(asset(i, seller), seller, RequestStatus.PENDING_CONFIRMATION), AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID)
+                    .signer(seller).signer(buyer);
+        }
+        return tx.build();
+    }
+
+    /** [AssetTransferContract.Commands.ConfirmRequest] of [legs] transfers. */
+    public LedgerTransaction transferConfirmRequest(int legs) {
+        return transferStatusChange(new AssetTransferContract.Commands.ConfirmRequest(), legs, RequestStatus.PENDING_CONFIRMATION, RequestStatus.PENDING);
+    }
+
+    /** [AssetTransferContract.Commands.SettleRequest] of [legs] transfers. */
+    public LedgerTransaction transferSettleRequest(int legs) {
+        return transferStatusChange(new AssetTransferContract.Commands.SettleRequest(), legs, RequestStatus.PENDING, RequestStatus.TRANSFERRED);
+    }
+
+    private LedgerTransaction transferStatusChange(CommandData command, int legs, RequestStatus from, RequestStatus to) {
+        Builder tx = new Builder(command);
+        for (int i = 0; i < legs; i++) {
+            Party seller = seller(i);
+            AssetTransfer before = transfer(asset(i, seller), seller, from);
+            AssetTransfer after = new AssetTransfer(before.getAsset(), seller, buyer, clearingHouse, to, before.getParticipants(), before.getLinearId());
+            tx.input(before, AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID)
+                    .output(after, AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID)
+                    .signer(buyer).signer(clearingHouse);
+        }
+        return tx.build();
+    }
+
+    /** A transaction of [command] over [inputs] and [outputs], all [Asset]s, signed by [signers]. */
+    public LedgerTransaction assetTx(CommandData command, List<Asset> inputs, List<Asset> outputs, Party... signers) {
+        Builder tx = new Builder(command);
+        for (Asset input : inputs) {
+            tx.input(input, AssetContract.ASSET_CONTRACT_ID);
+        }
+        for (Asset output : outputs) {
+            tx.output(output, AssetContract.ASSET_CONTRACT_ID);
+        }
+        for (Party signer : signers) {
+            tx.signer(signer);
+        }
+        return tx.build();
+    }
+
+    public Party getIssuer() {
+        return issuer;
+    }
+
+    public Party getBuyer() {
+        return buyer;
+    }
+
+    /** The seller of leg [leg]; legs cycle through a fixed set of sellers. */
+    public Party seller(int leg) {
+        return sellers.get(leg % sellers.size());
+    }
+
+    /** The asset of leg [leg], owned by [owner] and issued by [issuer], which may be null for a legacy asset. */
+    public Asset asset(int leg, Party owner, Party issuer) {
+        return new Asset("CUSIP" + leg, "BOND " + leg, new Amount<>(LEG_COST, Currencies.USD), owner, issuer);
+    }
+
+    private Asset asset(int leg, Party owner) {
+        return asset(leg, owner, issuer);
+    }
+
+    private AssetTransfer transfer(Asset asset, Party seller, RequestStatus status) {
+        return new AssetTransfer(asset, seller, buyer, clearingHouse, status, Arrays.asList(buyer, seller), new UniqueIdentifier());
+    }
+
+    private Cash.State cash(Party owner, long quantity) {
+        Amount<Issued<Currency>> amount = new Amount<>(quantity,
+                new Issued<>(new PartyAndReference(issuer, OpaqueBytes.Companion.of(new byte[]{0})), Currencies.USD));
+        return new Cash.State(amount, owner);
+    }
+
+    private final class Builder {
+        private final CommandData command;
+        private final List<StateAndRef<ContractState>> inputs = new ArrayList<>();
+        private final List<TransactionState<ContractState>> outputs = new ArrayList<>();
+        private final Set<PublicKey> signers = new LinkedHashSet<>();
+
+        Builder(CommandData command) {
+            this.command = command;
+        }
+
+        Builder input(ContractState state, String contract) {
+            inputs.add(new StateAndRef<>(new TransactionState<>(state, contract, notary), new StateRef(inputTx, inputs.size())));
+            return this;
+        }
+
+        Builder output(ContractState state, String contract) {
+            outputs.add(new TransactionState<>(state, contract, notary));
+            return this;
+        }
+
+        Builder signer(Party party) {
+            signers.add(party.getOwningKey());
+            return this;
+        }
+
+        LedgerTransaction build() {
+            List<CommandWithParties<CommandData>> commands = Collections.singletonList(
+                    new CommandWithParties<>(new ArrayList<>(signers), Collections.emptyList(), command));
+            return new LedgerTransaction(inputs, outputs, commands, Collections.emptyList(), SecureHash.randomSHA256(),
+                    notary, null, new PrivacySalt());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.template.cordapp.clearinghouse.netting;
+
+import kotlin.test.AssertionsKt;
+import org.junit.Test;
+
+import java.util.*;
+
+public final class MultilateralNettingEngineTests {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    @Test
+    public final void cycle_of_obligations_nets_to_nothing() {
+        MultilateralNettingEngine<String> engine = new MultilateralNettingEngine<>();
+        engine.add("A", "B", USD, 100);
+        engine.add("B", "C", USD, 100);
+        engine.add("C", "A", USD, 100);
+
+        AssertionsKt.assertTrue(engine.netPositions().isEmpty(), "a closed cycle leaves no positions");
+        AssertionsKt.assertTrue(engine.plan().isEmpty(), "a closed cycle needs no payments");
+    }
+
+    @Test
+    public final void plan_settles_every_net_position_per_currency() {
+        MultilateralNettingEngine<String> engine = new MultilateralNettingEngine<>();
+        engine.add("A", "B", USD, 300);
+        engine.add("B", "C", USD, 100);
+        engine.add("A", "C", USD, 50);
+        engine.add("C", "A", EUR, 70);
+        engine.add("B", "A", EUR, 30);
+
+        Map<Currency, Map<String, Long>> positions = engine.netPositions();
+        AssertionsKt.assertEquals(-350L, positions.get(USD).get("A"), "A owes its gross USD obligations");
+        AssertionsKt.assertEquals(200L, positions.get(USD).get("B"), "B is owed net of what it pays C");
+        AssertionsKt.assertEquals(100L, positions.get(EUR).get("A"), "A is owed EUR");
+
+        Map<Currency, Map<String, Long>> settled = new HashMap<>();
+        List<MultilateralNettingEngine.NettedPayment<String>> payments = engine.plan();
+        for (MultilateralNettingEngine.NettedPayment<String> payment : payments) {
+            Map<String, Long> byParty = settled.computeIfAbsent(payment.getCurrency(), c -> new HashMap<>());
+            byParty.merge(payment.getPayer(), -payment.getQuantity(), Long::sum);
+            byParty.merge(payment.getPayee(), payment.getQuantity(), Long::sum);
+        }
+        AssertionsKt.assertEquals(positions, settled, "payments reproduce the net positions");
+        AssertionsKt.assertEquals(4, payments.size(), "two payments per currency");
+    }
+
+    @Test
+    public final void many_gross_trades_between_few_parties_need_few_payments() {
+        MultilateralNettingEngine<String> engine = new MultilateralNettingEngine<>();
+        Random random = new Random(7);
+        String[] parties = {"A", "B", "C", "D", "E"};
+        for (int i = 0; i < 10_000; i++) {
+            String payer = parties[random.nextInt(parties.length)];
+            String payee = parties[random.nextInt(parties.length)];
+            engine.add(payer, payee, USD, 1 + random.nextInt(1_000_000));
+        }
+
+        AssertionsKt.assertTrue(engine.plan().size() < parties.length, "at most parties - 1 payments");
+    }
+}
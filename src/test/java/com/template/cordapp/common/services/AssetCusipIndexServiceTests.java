@@ -0,0 +1,64 @@
+package com.template.cordapp.common.services;
+
+import com.synechron.cordapp.contract.AssetContract;
+import com.template.cordapp.common.exception.TooManyStatesFoundException;
+import com.template.cordapp.flows.AbstractAssetJunitFlowTests;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.utils.UtilsKt;
+import kotlin.test.AssertionsKt;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.finance.Currencies;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public final class AssetCusipIndexServiceTests extends AbstractAssetJunitFlowTests {
+
+        @Test
+        public final void lookup_refuses_a_cusip_carried_by_two_assets/* $FF was: lookup refuses a cusip carried by two assets*/() {
+            // Separate issue transactions do not check each other's CUSIPs.
+            this.createAsset(this.getLenderOfSecurity(), this.getCusip(), "US BOND", Currencies.DOLLARS(1000));
+            this.createAsset(this.getLenderOfSecurity(), this.getCusip(), "US BOND again", Currencies.DOLLARS(2000));
+            this.getNetwork().waitQuiescent();
+
+            ServiceHub services = this.getLenderOfSecurity().getServices();
+            try {
+                this.getLenderOfSecurity().transaction(() -> UtilsKt.getAssetByCusip(services, this.getCusip()));
+                AssertionsKt.fail("Expected a duplicate CUSIP to be refused.");
+            } catch (TooManyStatesFoundException expected) {
+            }
+            try {
+                this.getLenderOfSecurity().transaction(() -> UtilsKt.getAssetsByCusips(services, Collections.singletonList(this.getCusip())));
+                AssertionsKt.fail("Expected a duplicate CUSIP to be refused.");
+            } catch (TooManyStatesFoundException expected) {
+            }
+        }
+
+        @Test
+        public final void rolled_back_asset_is_never_indexed/* $FF was: rolled back asset is never indexed*/() {
+            ServiceHub services = this.getLenderOfSecurity().getServices();
+            AssetCusipIndexService index = services.cordaService(AssetCusipIndexService.class);
+            Party us = this.getLenderOfSecurityParty();
+
+            try {
+                this.getLenderOfSecurity().transaction(() -> {
+                    TransactionBuilder txBuilder = new TransactionBuilder(this.getNetwork().getDefaultNotaryIdentity())
+                            .addOutputState(new Asset(this.getCusip(), "US BOND", Currencies.DOLLARS(1000), us, us), AssetContract.ASSET_CONTRACT_ID)
+                            .addCommand(new Command<>(new AssetContract.Commands.Create(), us.getOwningKey()));
+                    SignedTransaction stx = services.signInitialTransaction(txBuilder);
+                    services.recordTransactions(stx);
+                    throw new IllegalStateException("roll back");
+                });
+            } catch (IllegalStateException expected) {
+            }
+
+            AssertionsKt.assertEquals(0, index.getSize(), "nothing is indexed from an uncommitted transaction");
+            StateAndRef<Asset> found = this.getLenderOfSecurity().transaction(() -> index.lookup(this.getCusip()));
+            AssertionsKt.assertNull(found, "rolled back asset is not found");
+        }
+    }
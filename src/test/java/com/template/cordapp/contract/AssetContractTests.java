@@ -0,0 +1,103 @@
+package com.template.cordapp.contract;
+
+import com.synechron.cordapp.contract.AssetContract;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.testing.LedgerFixture;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import org.junit.Test;
+
+import java.util.*;
+
+    /**
+     * Verifies [AssetContract] transfers carrying thousands of legs, and the exit and re-issue commands, on transactions
+     * built by [LedgerFixture] so that only the contract is exercised.
+     */
+    public final class AssetContractTests {
+
+        private static final int LEGS = 5_000;
+
+        private final LedgerFixture ledger = new LedgerFixture();
+        private final Party issuer = ledger.getIssuer();
+        private final Party buyer = ledger.getBuyer();
+
+        private Asset ownedAsset(Party issuer) {
+            return ledger.asset(1, buyer, issuer);
+        }
+
+        @Test
+        public final void verifies_thousands_of_separately_paid_legs/* $FF was: verifies thousands of separately paid legs*/() {
+            new AssetContract().verify(ledger.assetTransfer(LEGS, false, Collections.emptyMap()));
+        }
+
+        @Test
+        public final void verifies_thousands_of_legs_with_netted_payments/* $FF was: verifies thousands of legs with netted payments*/() {
+            new AssetContract().verify(ledger.assetTransfer(LEGS, true, Collections.emptyMap()));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_one_underpaid_seller_among_thousands_of_legs/* $FF was: rejects one underpaid seller among thousands of legs*/() {
+            new AssetContract().verify(ledger.assetTransfer(LEGS, true, Collections.singletonMap(ledger.seller(17), -1L)));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_one_underpaid_leg_among_thousands/* $FF was: rejects one underpaid leg among thousands*/() {
+            new AssetContract().verify(ledger.assetTransfer(LEGS, false, Collections.singletonMap(ledger.seller(3), -1L)));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_asset_without_matching_transfer/* $FF was: rejects asset without matching transfer*/() {
+            LedgerTransaction tx = ledger.assetTransfer(LEGS, false, Collections.emptyMap());
+            List<StateAndRef<ContractState>> inputs = new ArrayList<>(tx.getInputs());
+            inputs.remove(inputs.size() - 1);
+            new AssetContract().verify(new LedgerTransaction(inputs, tx.getOutputs(), tx.getCommands(), tx.getAttachments(),
+                    tx.getId(), tx.getNotary(), null, tx.getPrivacySalt()));
+        }
+
+        @Test
+        public final void exit_signed_by_owner_and_issuer_verifies/* $FF was: exit signed by owner and issuer verifies*/() {
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Exit(), Collections.singletonList(ownedAsset(issuer)),
+                    Collections.emptyList(), buyer, issuer));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_exit_without_issuer_signature/* $FF was: rejects exit without issuer signature*/() {
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Exit(), Collections.singletonList(ownedAsset(issuer)),
+                    Collections.emptyList(), buyer));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_exit_of_asset_without_recorded_issuer/* $FF was: rejects exit of asset without recorded issuer*/() {
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Exit(), Collections.singletonList(ownedAsset(null)),
+                    Collections.emptyList(), buyer, issuer));
+        }
+
+        @Test
+        public final void reissue_signed_by_issuer_and_owner_verifies/* $FF was: reissue signed by issuer and owner verifies*/() {
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Reissue(SecureHash.randomSHA256()), Collections.emptyList(),
+                    Collections.singletonList(ownedAsset(issuer)), issuer, buyer));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_reissue_without_owner_signature/* $FF was: rejects reissue without owner signature*/() {
+            // The issuer alone could otherwise mint an asset to anyone.
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Reissue(SecureHash.randomSHA256()), Collections.emptyList(),
+                    Collections.singletonList(ownedAsset(issuer)), issuer));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_reissue_without_issuer_signature/* $FF was: rejects reissue without issuer signature*/() {
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Reissue(SecureHash.randomSHA256()), Collections.emptyList(),
+                    Collections.singletonList(ownedAsset(issuer)), buyer));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public final void rejects_reissue_with_inputs/* $FF was: rejects reissue with inputs*/() {
+            Asset asset = ownedAsset(issuer);
+            new AssetContract().verify(ledger.assetTx(new AssetContract.Commands.Reissue(SecureHash.randomSHA256()), Collections.singletonList(asset),
+                    Collections.singletonList(asset), issuer, buyer));
+        }
+    }
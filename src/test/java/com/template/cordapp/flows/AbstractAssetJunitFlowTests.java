@@ -171,9 +171,16 @@ public abstract class AbstractAssetJunitFlowTests {
             return this.cusip;
         }
 
+        /**
+         * Notaries the mock network starts; null for the network's default single notary.
+         */
+        protected List<MockNetworkNotarySpec> notarySpecs() {
+            return null;
+        }
+
         @Before
         public final void setup() {
-            this.network = new MockNetwork(ImmutableList.of("com.template.cordapp"), (MockNetworkParameters)null, false, true, (InMemoryMessagingNetwork.ServicePeerAllocationStrategy)null, (List)null, (NetworkParameters)null);
+            this.network = new MockNetwork(ImmutableList.of("com.template.cordapp"), (MockNetworkParameters)null, false, true, (InMemoryMessagingNetwork.ServicePeerAllocationStrategy)null, (List)this.notarySpecs(), (NetworkParameters)null);
 
             MockNetwork var10001 = this.network;
             if (var10001 == null) {
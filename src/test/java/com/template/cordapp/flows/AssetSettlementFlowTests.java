@@ -1,5 +1,8 @@
 package com.template.cordapp.flows;
 
+import com.template.cordapp.clearinghouse.flows.AssetSettlementInitiatorFlow;
+import com.template.cordapp.common.services.ConfidentialIdentityPoolService;
+import com.template.cordapp.seller.flows.CreateBulkAssetTransferRequestInitiatorFlow;
 import com.template.cordapp.state.Asset;
 import com.template.cordapp.state.AssetTransfer;
 import com.template.cordapp.state.RequestStatus;
@@ -11,12 +14,18 @@ import kotlin.jvm.functions.Function0;
 import kotlin.jvm.internal.Intrinsics;
 import net.corda.core.contracts.Amount;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.KotlinUtilsKt;
 import net.corda.finance.Currencies;
 import net.corda.finance.contracts.GetBalances;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
     public final class AssetSettlementFlowTests extends AbstractAssetJunitFlowTests {
@@ -184,7 +193,7 @@ import java.util.List;
                                             throwable.printStackTrace();
                                         }
                                     } else {
-                                        var3 = Intrinsics.areEqual((Asset)((StateAndRef)CollectionsKt.first(assetStates)).getState().getData(), Asset.copy$default(assetTransfer.getAsset(), (String)null, (String)null, (Amount)null, assetTransfer.getSecurityBuyer(), 7, (Object)null));
+                                        var3 = Intrinsics.areEqual((Asset)((StateAndRef)CollectionsKt.first(assetStates)).getState().getData(), Asset.copy$default(assetTransfer.getAsset(), (String)null, (String)null, (Amount)null, assetTransfer.getSecurityBuyer(), (Party)null, 23, (Object)null));
                                         if (_Assertions.ENABLED && !var3) {
                                             var4 = "Assertion failed";
                                             try {
@@ -221,6 +230,123 @@ import java.util.List;
                 }
             }));
         }
-    }
 
+        @Test
+        public final void process_netted_settlement_of_several_transfers/* $FF was: process netted settlement of several transfers*/() throws Throwable {
+            List<String> cusips = Arrays.asList("CUSIP1", "CUSIP2", "CUSIP3");
+            for (String cusip : cusips) {
+                this.createAsset(this.getLenderOfSecurity(), cusip, "US BOND " + cusip, Currencies.DOLLARS(1000));
+            }
+            this.getNetwork().waitQuiescent();
+
+            SignedTransaction requestTx = KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(
+                    new CreateBulkAssetTransferRequestInitiatorFlow(cusips, this.getLenderOfCashParty())), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            List<UniqueIdentifier> linearIds = new ArrayList<>();
+            for (AssetTransfer assetTransfer : requestTx.getTx().outputsOfType(AssetTransfer.class)) {
+                this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), assetTransfer.getLinearId());
+                linearIds.add(assetTransfer.getLinearId());
+            }
+            this.getNetwork().waitQuiescent();
+            this.selfIssueCash(this.getLenderOfCash(), Currencies.DOLLARS(5000));
+
+            SignedTransaction settleTx = KotlinUtilsKt.getOrThrow(this.getGlobalCustodian().startFlow(
+                    new AssetSettlementInitiatorFlow(linearIds)), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            kotlin.test.AssertionsKt.assertEquals(3, settleTx.getTx().outputsOfType(Asset.class).size(), "all asset legs in one transaction");
+
+            Amount sellerCash = this.getLenderOfSecurity().transaction(() ->
+                    MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfSecurity().getServices()), Currencies.USD));
+            kotlin.test.AssertionsKt.assertEquals(Currencies.DOLLARS(3000), sellerCash, "seller is paid the netted total");
+
+            Amount buyerCash = this.getLenderOfCash().transaction(() ->
+                    MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfCash().getServices()), Currencies.USD));
+            kotlin.test.AssertionsKt.assertEquals(Currencies.DOLLARS(2000), buyerCash, "buyer spends the netted total once");
+
+            int buyerAssets = this.getLenderOfCash().transaction(() ->
+                    this.getLenderOfCash().getServices().getVaultService().queryBy(Asset.class).getStates().size());
+            kotlin.test.AssertionsKt.assertEquals(3, buyerAssets, "buyer owns every settled asset");
+        }
+
+        @Test
+        public final void process_netted_settlement_of_separately_requested_transfers/* $FF was: process netted settlement of separately requested transfers*/() throws Throwable {
+            // Each request names the seller by a fresh confidential key, so the netted payment is split by key.
+            List<String> cusips = Arrays.asList("CUSIP1", "CUSIP2");
+            List<UniqueIdentifier> linearIds = new ArrayList<>();
+            List<AssetTransfer> requested = new ArrayList<>();
+            for (String cusip : cusips) {
+                this.createAsset(this.getLenderOfSecurity(), cusip, "US BOND " + cusip, Currencies.DOLLARS(1000));
+                this.getNetwork().waitQuiescent();
+                SignedTransaction requestTx = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), cusip);
+                this.getNetwork().waitQuiescent();
+                AssetTransfer assetTransfer = CollectionsKt.single(requestTx.getTx().outputsOfType(AssetTransfer.class));
+                this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), assetTransfer.getLinearId());
+                this.getNetwork().waitQuiescent();
+                requested.add(assetTransfer);
+                linearIds.add(assetTransfer.getLinearId());
+            }
+            kotlin.test.AssertionsKt.assertNotEquals(requested.get(0).getSecuritySeller(), requested.get(1).getSecuritySeller(), "requests use different seller keys");
+            this.selfIssueCash(this.getLenderOfCash(), Currencies.DOLLARS(5000));
+
+            SignedTransaction settleTx = KotlinUtilsKt.getOrThrow(this.getGlobalCustodian().startFlow(
+                    new AssetSettlementInitiatorFlow(linearIds)), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            kotlin.test.AssertionsKt.assertEquals(2, settleTx.getTx().outputsOfType(Asset.class).size(), "both asset legs in one transaction");
+
+            Amount sellerCash = this.getLenderOfSecurity().transaction(() ->
+                    MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfSecurity().getServices()), Currencies.USD));
+            kotlin.test.AssertionsKt.assertEquals(Currencies.DOLLARS(2000), sellerCash, "seller is paid for both assets");
 
+            Amount buyerCash = this.getLenderOfCash().transaction(() ->
+                    MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfCash().getServices()), Currencies.USD));
+            kotlin.test.AssertionsKt.assertEquals(Currencies.DOLLARS(3000), buyerCash, "buyer spends the netted total once");
+        }
+
+        @Test
+        public final void process_netted_settlement_of_pooled_key_requests/* $FF was: process netted settlement of pooled key requests*/() throws Throwable {
+            for (String cusip : Arrays.asList("CUSIP1", "CUSIP2")) {
+                this.createAsset(this.getLenderOfSecurity(), cusip, "US BOND " + cusip, Currencies.DOLLARS(1000));
+            }
+            this.getNetwork().waitQuiescent();
+
+            // The first request swaps its keys inline; fill both pools before the second so that it draws pooled keys.
+            AssetTransfer first = this.requestAndConfirm("CUSIP1");
+            ConfidentialIdentityPoolService sellerPool = this.getLenderOfSecurity().getServices().cordaService(ConfidentialIdentityPoolService.class);
+            ConfidentialIdentityPoolService buyerPool = this.getLenderOfCash().getServices().cordaService(ConfidentialIdentityPoolService.class);
+            KotlinUtilsKt.getOrThrow(sellerPool.refill(this.getLenderOfCashParty()), (Duration) null);
+            KotlinUtilsKt.getOrThrow(buyerPool.refill(this.getCustodianParty()), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            AssetTransfer second = this.requestAndConfirm("CUSIP2");
+            kotlin.test.AssertionsKt.assertEquals(ConfidentialIdentityPoolService.TARGET_SIZE - 1, sellerPool.available(this.getLenderOfCashParty()), "request used a pooled pair");
+            kotlin.test.AssertionsKt.assertEquals(ConfidentialIdentityPoolService.TARGET_SIZE - 1, buyerPool.available(this.getCustodianParty()), "confirmation used a pooled pair");
+            kotlin.test.AssertionsKt.assertNotEquals(first.getSecuritySeller(), second.getSecuritySeller(), "requests use different seller keys");
+            this.selfIssueCash(this.getLenderOfCash(), Currencies.DOLLARS(5000));
+
+            SignedTransaction settleTx = KotlinUtilsKt.getOrThrow(this.getGlobalCustodian().startFlow(
+                    new AssetSettlementInitiatorFlow(Arrays.asList(first.getLinearId(), second.getLinearId()))), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            kotlin.test.AssertionsKt.assertEquals(2, settleTx.getTx().outputsOfType(Asset.class).size(), "both asset legs in one transaction");
+
+            Amount sellerCash = this.getLenderOfSecurity().transaction(() ->
+                    MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfSecurity().getServices()), Currencies.USD));
+            kotlin.test.AssertionsKt.assertEquals(Currencies.DOLLARS(2000), sellerCash, "seller is paid for both assets");
+
+            Amount buyerCash = this.getLenderOfCash().transaction(() ->
+                    MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfCash().getServices()), Currencies.USD));
+            kotlin.test.AssertionsKt.assertEquals(Currencies.DOLLARS(3000), buyerCash, "buyer spends the netted total once");
+        }
+
+        private AssetTransfer requestAndConfirm(String cusip) throws Throwable {
+            SignedTransaction requestTx = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), cusip);
+            this.getNetwork().waitQuiescent();
+            AssetTransfer assetTransfer = CollectionsKt.single(requestTx.getTx().outputsOfType(AssetTransfer.class));
+            this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), assetTransfer.getLinearId());
+            this.getNetwork().waitQuiescent();
+            return assetTransfer;
+        }
+    }
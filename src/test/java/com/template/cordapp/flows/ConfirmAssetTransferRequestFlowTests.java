@@ -1,5 +1,7 @@
 package com.template.cordapp.flows;
 
+import com.template.cordapp.services.LinearStateCacheService;
+import com.template.cordapp.services.WellKnownIdentityCacheService;
 import com.template.cordapp.state.AssetTransfer;
 import com.template.cordapp.state.RequestStatus;
 import kotlin.TypeCastException;
@@ -8,6 +10,7 @@ import kotlin._Assertions;
 import kotlin.jvm.functions.Function0;
 import kotlin.jvm.internal.Intrinsics;
 import kotlin.jvm.internal.Ref;
+import kotlin.test.AssertionsKt;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.TransactionResolutionException;
 import net.corda.core.contracts.UniqueIdentifier;
@@ -117,8 +120,43 @@ public final class ConfirmAssetTransferRequestFlowTests extends AbstractAssetJun
                 }
             }
         }
-    }
 
+        @Test
+        public final void confirm_is_served_from_linear_state_cache/* $FF was: confirm is served from linear state cache*/() throws Throwable {
+            this.createAsset();
+            SignedTransaction stx1 = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), this.getCusip());
+            this.getNetwork().waitQuiescent();
+            UniqueIdentifier linearId = stx1.getTx().outputsOfType(AssetTransfer.class).get(0).getLinearId();
 
+            LinearStateCacheService cache = this.getLenderOfCash().getServices().cordaService(LinearStateCacheService.class);
+            long hits = cache.getHits();
+            long misses = cache.getMisses();
+            this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), linearId);
+            this.getNetwork().waitQuiescent();
 
+            AssertionsKt.assertEquals(hits + 1, cache.getHits(), "request recorded by the vault feed is a cache hit");
+            AssertionsKt.assertEquals(misses, cache.getMisses(), "no vault query on confirm");
+        }
 
+        @Test
+        public final void repeated_identity_resolution_is_served_from_cache/* $FF was: repeated identity resolution is served from cache*/() throws Throwable {
+            this.createAsset();
+            SignedTransaction stx1 = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), this.getCusip());
+            this.getNetwork().waitQuiescent();
+            UniqueIdentifier linearId = stx1.getTx().outputsOfType(AssetTransfer.class).get(0).getLinearId();
+            SignedTransaction stx2 = this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), linearId);
+            this.getNetwork().waitQuiescent();
+            AssetTransfer confirmed = stx2.getTx().outputsOfType(AssetTransfer.class).get(0);
+
+            WellKnownIdentityCacheService cache = this.getGlobalCustodian().getServices().cordaService(WellKnownIdentityCacheService.class);
+            Party seller = this.getGlobalCustodian().transaction(() -> cache.requireWellKnownPartyFromAnonymous(confirmed.getSecuritySeller()));
+            long misses = cache.getMisses();
+            for (int i = 0; i < 10; i++) {
+                Party again = this.getGlobalCustodian().transaction(() -> cache.requireWellKnownPartyFromAnonymous(confirmed.getSecuritySeller()));
+                AssertionsKt.assertEquals(seller, again, "expected equals actual");
+            }
+
+            AssertionsKt.assertEquals(this.getLenderOfSecurityParty(), seller, "confidential seller resolves to the lender of security");
+            AssertionsKt.assertEquals(misses, cache.getMisses(), "repeat lookups do not reach the identity service");
+        }
+    }
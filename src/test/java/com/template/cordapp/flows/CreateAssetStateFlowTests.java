@@ -1,15 +1,28 @@
 package com.template.cordapp.flows;
 
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.cordapp.seller.flows.AssetIssueRequest;
+import com.template.cordapp.seller.flows.AssetIssueResult;
+import com.template.cordapp.seller.flows.CreateAssetStateFlow;
 import com.template.cordapp.state.Asset;
 import kotlin.TypeCastException;
 import kotlin.test.AssertionsKt;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.KotlinUtilsKt;
 import net.corda.finance.Currencies;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public final class CreateAssetStateFlowTests extends AbstractAssetJunitFlowTests {
 
         @Test
@@ -24,5 +37,78 @@ public final class CreateAssetStateFlowTests extends AbstractAssetJunitFlowTests
                 AssertionsKt.assertEquals(asset.getCusip(), this.getCusip(),"expected equals actual");
             }
         }
-    }
 
+        @Test
+        public final void create_Asset_batch_on_ledger_in_chunks/* $FF was: create Asset batch on ledger in chunks*/() {
+            List<AssetIssueRequest> rows = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                rows.add(new AssetIssueRequest("CUSIP" + i, "US BOND " + i, Currencies.DOLLARS(1000 + i)));
+            }
+            rows.add(new AssetIssueRequest("CUSIP0", "US BOND duplicate", Currencies.DOLLARS(1000)));
+
+            CreateAssetStateFlow.BatchInitiator flow = new CreateAssetStateFlow.BatchInitiator(rows, 10);
+            List<AssetIssueResult> results = KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(flow), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            AssertionsKt.assertEquals(26, results.size(), "one result per row");
+            AssertionsKt.assertEquals(AssetIssueResult.Status.REJECTED, results.get(25).getStatus(), "duplicate CUSIP is rejected");
+
+            Set<SecureHash> txIds = new HashSet<>();
+            for (int i = 0; i < 25; i++) {
+                AssertionsKt.assertEquals(AssetIssueResult.Status.ISSUED, results.get(i).getStatus(), "row is issued");
+                txIds.add(results.get(i).getTxId());
+            }
+            AssertionsKt.assertEquals(3, txIds.size(), "25 rows with a cap of 10 need three transactions");
+
+            int issued = this.getLenderOfSecurity().transaction(() ->
+                    this.getLenderOfSecurity().getServices().getVaultService().queryBy(Asset.class).getStates().size());
+            AssertionsKt.assertEquals(25, issued, "expected equals actual");
+        }
+
+        @Test
+        public final void failed_chunk_rejects_only_its_rows/* $FF was: failed chunk rejects only its rows*/() {
+            List<AssetIssueRequest> rows = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                rows.add(new AssetIssueRequest("CUSIP" + i, "US BOND " + i, Currencies.DOLLARS(1000 + i)));
+            }
+
+            // Rows 10 to 19 make up the second chunk, which the flow below fails as a rejecting notary would.
+            FailingChunkBatchInitiator flow = new FailingChunkBatchInitiator(rows, 10, "CUSIP10");
+            List<AssetIssueResult> results = KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(flow), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            AssertionsKt.assertEquals(20, results.size(), "one result per row");
+            for (int i = 0; i < 10; i++) {
+                AssertionsKt.assertEquals(AssetIssueResult.Status.ISSUED, results.get(i).getStatus(), "first chunk is issued");
+            }
+            for (int i = 10; i < 20; i++) {
+                AssertionsKt.assertEquals(AssetIssueResult.Status.REJECTED, results.get(i).getStatus(), "failed chunk is rejected");
+            }
+
+            int issued = this.getLenderOfSecurity().transaction(() ->
+                    this.getLenderOfSecurity().getServices().getVaultService().queryBy(Asset.class).getStates().size());
+            AssertionsKt.assertEquals(10, issued, "only the first chunk reaches the vault");
+        }
+
+        /** Fails finality for the chunk holding [failingCusip] instead of handing it to the notary. */
+        public static final class FailingChunkBatchInitiator extends CreateAssetStateFlow.BatchInitiator {
+
+            private final String failingCusip;
+
+            public FailingChunkBatchInitiator(List<AssetIssueRequest> rows, int maxStatesPerTransaction, String failingCusip) {
+                super(rows, maxStatesPerTransaction);
+                this.failingCusip = failingCusip;
+            }
+
+            @Suspendable
+            @Override
+            protected SignedTransaction finaliseChunk(SignedTransaction signedChunk) throws FlowException {
+                for (ContractState output : signedChunk.getTx().getOutputStates()) {
+                    if (((Asset) output).getCusip().equals(failingCusip)) {
+                        throw new FlowException("Notary rejected the transaction.");
+                    }
+                }
+                return super.finaliseChunk(signedChunk);
+            }
+        }
+    }
@@ -1,5 +1,7 @@
 package com.template.cordapp.flows;
 
+import com.template.cordapp.common.services.ConfidentialIdentityPoolService;
+import com.template.cordapp.seller.flows.CreateBulkAssetTransferRequestInitiatorFlow;
 import com.template.cordapp.state.AssetTransfer;
 import kotlin.TypeCastException;
 import kotlin.test.AssertionsKt;
@@ -7,9 +9,17 @@ import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.TransactionResolutionException;
 import net.corda.core.identity.Party;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.KotlinUtilsKt;
+import net.corda.finance.Currencies;
 import net.corda.testing.internal.InternalTestUtilsKt;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 
     public final class CreateAssetTransferRequestFlowTests extends AbstractAssetJunitFlowTests {
         @Test
@@ -42,7 +52,58 @@ import org.junit.Test;
                 }
             }
         }
-    }
 
+        @Test
+        public final void create_bulk_asset_transfer_request_successfully/* $FF was: create bulk asset transfer request successfully*/() {
+            Party lenderOfCashParty = InternalTestUtilsKt.chooseIdentity(this.getLenderOfCash().getInfo());
+            List<String> cusips = Arrays.asList("CUSIP1", "CUSIP2", "CUSIP3");
+            for (String cusip : cusips) {
+                this.createAsset(this.getLenderOfSecurity(), cusip, "US BOND " + cusip, Currencies.DOLLARS(1000));
+            }
+            this.getNetwork().waitQuiescent();
+
+            CreateBulkAssetTransferRequestInitiatorFlow flow = new CreateBulkAssetTransferRequestInitiatorFlow(cusips, lenderOfCashParty);
+            SignedTransaction stx = KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(flow), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            List<AssetTransfer> outputs = stx.getTx().outputsOfType(AssetTransfer.class);
+            AssertionsKt.assertEquals(3, outputs.size(), "one AssetTransfer per CUSIP");
+            Set<String> transferred = new HashSet<>();
+            for (AssetTransfer assetTransfer : outputs) {
+                transferred.add(assetTransfer.getAsset().getCusip());
+                AssertionsKt.assertEquals(lenderOfCashParty, this.resolveIdentity(this.getLenderOfCash(), assetTransfer.getSecurityBuyer()), "expected equals actual");
+            }
+            AssertionsKt.assertEquals(new HashSet<>(cusips), transferred, "expected equals actual");
 
+            int received = this.getLenderOfCash().transaction(() ->
+                    this.getLenderOfCash().getServices().getVaultService().queryBy(AssetTransfer.class).getStates().size());
+            AssertionsKt.assertEquals(3, received, "expected equals actual");
+        }
 
+        @Test
+        public final void later_requests_draw_confidential_identities_from_the_pool/* $FF was: later requests draw confidential identities from the pool*/() throws InterruptedException {
+            Party lenderOfCashParty = InternalTestUtilsKt.chooseIdentity(this.getLenderOfCash().getInfo());
+            for (String cusip : Arrays.asList("CUSIP1", "CUSIP2")) {
+                this.createAsset(this.getLenderOfSecurity(), cusip, "US BOND " + cusip, Currencies.DOLLARS(1000));
+            }
+            this.getNetwork().waitQuiescent();
+
+            ConfidentialIdentityPoolService pool = this.getLenderOfSecurity().getServices().cordaService(ConfidentialIdentityPoolService.class);
+            SignedTransaction stx1 = this.createAssetTransferRequest(this.getLenderOfSecurity(), lenderOfCashParty, "CUSIP1");
+            this.getNetwork().waitQuiescent();
+            // One trade is below the pooling threshold, so nothing is swapped until the pool is filled here.
+            AssertionsKt.assertEquals(0, pool.available(lenderOfCashParty), "first trade does not start pooling");
+            KotlinUtilsKt.getOrThrow(pool.refill(lenderOfCashParty), (Duration) null);
+            this.getNetwork().waitQuiescent();
+            AssertionsKt.assertEquals(ConfidentialIdentityPoolService.TARGET_SIZE, pool.available(lenderOfCashParty), "pool is filled after first trade");
+
+            SignedTransaction stx2 = this.createAssetTransferRequest(this.getLenderOfSecurity(), lenderOfCashParty, "CUSIP2");
+            this.getNetwork().waitQuiescent();
+            AssertionsKt.assertEquals(ConfidentialIdentityPoolService.TARGET_SIZE - 1, pool.available(lenderOfCashParty), "second trade used a pooled pair");
+
+            AssetTransfer first = stx1.getTx().outputsOfType(AssetTransfer.class).get(0);
+            AssetTransfer second = stx2.getTx().outputsOfType(AssetTransfer.class).get(0);
+            AssertionsKt.assertNotEquals(first.getSecuritySeller(), second.getSecuritySeller(), "each trade gets a fresh identity");
+            AssertionsKt.assertEquals(lenderOfCashParty, this.resolveIdentity(this.getLenderOfCash(), second.getSecurityBuyer()), "pooled buyer identity resolves on the buyer");
+        }
+    }
@@ -0,0 +1,146 @@
+package com.template.cordapp.flows;
+
+import com.template.cordapp.common.flows.SetNotarySelectionStrategyFlow;
+import com.template.cordapp.common.services.CusipStickyNotarySelection;
+import com.template.cordapp.common.services.LeastLatencyNotarySelection;
+import com.template.cordapp.common.services.NotarySelectionService;
+import com.template.cordapp.common.services.RoundRobinNotarySelection;
+import com.template.cordapp.seller.flows.AssetIssueRequest;
+import com.template.cordapp.seller.flows.AssetIssueResult;
+import com.template.cordapp.seller.flows.CreateAssetStateFlow;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.state.AssetTransfer;
+import com.template.cordapp.state.RequestStatus;
+import kotlin.collections.MapsKt;
+import kotlin.test.AssertionsKt;
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.KotlinUtilsKt;
+import net.corda.finance.Currencies;
+import net.corda.finance.contracts.GetBalances;
+import net.corda.testing.node.MockNetworkNotarySpec;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+public final class NotarySelectionFlowTests extends AbstractAssetJunitFlowTests {
+
+    private static final CordaX500Name NOTARY_A = CordaX500Name.parse("O=Notary A,L=London,C=GB");
+    private static final CordaX500Name NOTARY_B = CordaX500Name.parse("O=Notary B,L=Zurich,C=CH");
+
+    @Override
+    protected List<MockNetworkNotarySpec> notarySpecs() {
+        return Arrays.asList(new MockNetworkNotarySpec(NOTARY_A), new MockNetworkNotarySpec(NOTARY_B));
+    }
+
+    private NotarySelectionService notarySelection() {
+        return this.getLenderOfSecurity().getServices().cordaService(NotarySelectionService.class);
+    }
+
+    @Test
+    public final void batch_issuance_places_each_cusip_on_its_sticky_notary/* $FF was: batch issuance places each cusip on its sticky notary*/() {
+        notarySelection().setStrategy(new CusipStickyNotarySelection());
+        List<AssetIssueRequest> rows = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rows.add(new AssetIssueRequest("CUSIP" + i, "US BOND " + i, Currencies.DOLLARS(1000 + i)));
+        }
+
+        CreateAssetStateFlow.BatchInitiator flow = new CreateAssetStateFlow.BatchInitiator(rows);
+        List<AssetIssueResult> results = KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(flow), (Duration) null);
+        this.getNetwork().waitQuiescent();
+
+        Set<Object> txIds = new HashSet<>();
+        for (AssetIssueResult result : results) {
+            AssertionsKt.assertEquals(AssetIssueResult.Status.ISSUED, result.getStatus(), "row is issued");
+            txIds.add(result.getTxId());
+        }
+        AssertionsKt.assertEquals(2, txIds.size(), "one transaction per notary");
+
+        Set<CordaX500Name> used = new HashSet<>();
+        List<StateAndRef<Asset>> assets = this.getLenderOfSecurity().transaction(() ->
+                this.getLenderOfSecurity().getServices().getVaultService().queryBy(Asset.class).getStates());
+        for (StateAndRef<Asset> asset : assets) {
+            Party notary = asset.getState().getNotary();
+            AssertionsKt.assertEquals(notarySelection().select(asset.getState().getData().getCusip()), notary, "asset is on its CUSIP's notary");
+            used.add(notary.getName());
+        }
+        AssertionsKt.assertEquals(new HashSet<>(Arrays.asList(NOTARY_A, NOTARY_B)), used, "both notaries carry traffic");
+        AssertionsKt.assertNotNull(notarySelection().observedLatency(assets.get(0).getState().getNotary()), "finality latency is recorded");
+    }
+
+    @Test
+    public final void default_selection_settles_against_cash_on_the_first_notary/* $FF was: default selection settles against cash on the first notary*/() throws Throwable {
+        // CUSIPs that the sticky strategy would split across both notaries.
+        List<String> cusips = Arrays.asList("CUSIP1", "CUSIP2", "CUSIP3", "CUSIP4");
+        List<UniqueIdentifier> linearIds = new ArrayList<>();
+        for (String cusip : cusips) {
+            this.createAsset(this.getLenderOfSecurity(), cusip, "US BOND " + cusip, Currencies.DOLLARS(1000));
+            this.getNetwork().waitQuiescent();
+            SignedTransaction request = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), cusip);
+            this.getNetwork().waitQuiescent();
+            UniqueIdentifier linearId = request.getTx().outputsOfType(AssetTransfer.class).get(0).getLinearId();
+            this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), linearId);
+            this.getNetwork().waitQuiescent();
+            linearIds.add(linearId);
+        }
+        SignedTransaction cashTx = this.selfIssueCash(this.getLenderOfCash(), Currencies.DOLLARS(5000));
+
+        for (UniqueIdentifier linearId : linearIds) {
+            SignedTransaction settleTx = this.settleAssetTransferRequest(this.getGlobalCustodian(), linearId);
+            this.getNetwork().waitQuiescent();
+            AssertionsKt.assertEquals(cashTx.getNotary(), settleTx.getNotary(), "settlement runs on the notary holding the cash");
+        }
+
+        List<StateAndRef<AssetTransfer>> transfers = this.getLenderOfCash().transaction(() ->
+                this.getLenderOfCash().getServices().getVaultService().queryBy(AssetTransfer.class).getStates());
+        for (StateAndRef<AssetTransfer> transfer : transfers) {
+            AssertionsKt.assertEquals(RequestStatus.TRANSFERRED, transfer.getState().getData().getStatus(), "every transfer settles");
+        }
+        Amount sellerCash = this.getLenderOfSecurity().transaction(() ->
+                MapsKt.getValue(GetBalances.getCashBalances(this.getLenderOfSecurity().getServices()), Currencies.USD));
+        AssertionsKt.assertEquals(Currencies.DOLLARS(4000), sellerCash, "seller is paid for every asset");
+    }
+
+    @Test
+    public final void round_robin_alternates_between_notaries/* $FF was: round robin alternates between notaries*/() {
+        NotarySelectionService service = notarySelection();
+        service.setStrategy(new RoundRobinNotarySelection());
+
+        Party first = service.select();
+        Party second = service.select();
+        AssertionsKt.assertNotEquals(first, second, "consecutive selections differ");
+        AssertionsKt.assertEquals(first, service.select(), "selection wraps around");
+    }
+
+    @Test
+    public final void least_latency_prefers_the_fastest_measured_notary/* $FF was: least latency prefers the fastest measured notary*/() {
+        NotarySelectionService service = notarySelection();
+        service.setStrategy(new LeastLatencyNotarySelection());
+
+        Party unmeasured = service.select();
+        service.recordLatency(unmeasured, Duration.ofMillis(500));
+        Party other = service.select();
+        AssertionsKt.assertNotEquals(unmeasured, other, "unmeasured notary is tried first");
+
+        service.recordLatency(other, Duration.ofMillis(20));
+        AssertionsKt.assertEquals(other, service.select(), "fastest notary wins");
+    }
+
+    @Test
+    public final void strategy_is_set_by_name_over_rpc/* $FF was: strategy is set by name over rpc*/() {
+        KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(new SetNotarySelectionStrategyFlow("round-robin")), (Duration) null);
+        AssertionsKt.assertTrue(notarySelection().getStrategy() instanceof RoundRobinNotarySelection, "named strategy is installed");
+
+        try {
+            KotlinUtilsKt.getOrThrow(this.getLenderOfSecurity().startFlow(new SetNotarySelectionStrategyFlow("fastest")), (Duration) null);
+            AssertionsKt.fail("Expected the unknown strategy to be rejected.");
+        } catch (IllegalArgumentException expected) {
+        }
+        AssertionsKt.assertTrue(notarySelection().getStrategy() instanceof RoundRobinNotarySelection, "unknown name leaves the strategy alone");
+    }
+}
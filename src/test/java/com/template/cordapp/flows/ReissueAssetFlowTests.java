@@ -0,0 +1,75 @@
+package com.template.cordapp.flows;
+
+import com.template.cordapp.common.flows.ReissueAssetFlow;
+import com.template.cordapp.common.services.AssetReissuancePolicyService;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.state.AssetTransfer;
+import kotlin.collections.CollectionsKt;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.KotlinUtilsKt;
+import net.corda.finance.Currencies;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Future;
+
+    public final class ReissueAssetFlowTests extends AbstractAssetJunitFlowTests {
+
+        private void settleToBuyer() throws Throwable {
+            this.createAsset();
+            SignedTransaction requestTx = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), this.getCusip());
+            this.getNetwork().waitQuiescent();
+            AssetTransfer assetTransfer = CollectionsKt.single(requestTx.getTx().outputsOfType(AssetTransfer.class));
+            this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), assetTransfer.getLinearId());
+            this.getNetwork().waitQuiescent();
+            this.selfIssueCash(this.getLenderOfCash(), Currencies.DOLLARS(2000));
+            this.settleAssetTransferRequest(this.getGlobalCustodian(), assetTransfer.getLinearId());
+            this.getNetwork().waitQuiescent();
+        }
+
+        private StateAndRef<Asset> buyerAsset() {
+            return this.getLenderOfCash().transaction(() ->
+                    CollectionsKt.firstOrNull(this.getLenderOfCash().getServices().getVaultService().queryBy(Asset.class).getStates()));
+        }
+
+        @Test
+        public final void reissue_cuts_asset_history_to_one_transaction/* $FF was: reissue cuts asset history to one transaction*/() throws Throwable {
+            this.getLenderOfSecurity().registerInitiatedFlow(ReissueAssetFlow.Responder.class);
+            this.settleToBuyer();
+            StateAndRef<Asset> settled = this.buyerAsset();
+            AssetReissuancePolicyService policyService = this.getLenderOfCash().getServices().cordaService(AssetReissuancePolicyService.class);
+            int depthBefore = this.getLenderOfCash().transaction(() -> policyService.chainDepth(settled.getRef().getTxhash()));
+            kotlin.test.AssertionsKt.assertEquals(2, depthBefore, "issue and settlement");
+
+            SignedTransaction reissueTx = KotlinUtilsKt.getOrThrow(this.getLenderOfCash().startFlow(
+                    new ReissueAssetFlow.Initiator(this.getCusip())), (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            kotlin.test.AssertionsKt.assertTrue(reissueTx.getTx().getInputs().isEmpty(), "re-issue has no history");
+            StateAndRef<Asset> reissued = this.buyerAsset();
+            kotlin.test.AssertionsKt.assertEquals(reissueTx.getId(), reissued.getRef().getTxhash(), "buyer holds the re-issued state");
+            kotlin.test.AssertionsKt.assertEquals(settled.getState().getData(), reissued.getState().getData(), "asset is unchanged");
+            int depthAfter = this.getLenderOfCash().transaction(() -> policyService.chainDepth(reissued.getRef().getTxhash()));
+            kotlin.test.AssertionsKt.assertEquals(1, depthAfter, "chain is snipped");
+        }
+
+        @Test
+        public final void chain_depth_policy_reissues_received_assets/* $FF was: chain depth policy reissues received assets*/() throws Throwable {
+            this.getLenderOfSecurity().registerInitiatedFlow(ReissueAssetFlow.Responder.class);
+            this.getLenderOfCash().getServices().cordaService(AssetReissuancePolicyService.class)
+                    .setPolicy(new AssetReissuancePolicyService.ChainDepthPolicy(1));
+            this.settleToBuyer();
+
+            // The policy schedules the re-issue while the settled asset is recorded, before the settlement flow ends.
+            Future<SignedTransaction> pending = this.getLenderOfCash().getServices().cordaService(AssetReissuancePolicyService.class)
+                    .pendingReissue(this.getCusip());
+            kotlin.test.AssertionsKt.assertNotNull(pending, "policy scheduled a re-issue");
+            SignedTransaction reissueTx = KotlinUtilsKt.getOrThrow(pending, (Duration) null);
+            this.getNetwork().waitQuiescent();
+
+            StateAndRef<Asset> held = this.buyerAsset();
+            boolean reissued = reissueTx.getTx().getInputs().isEmpty() && reissueTx.getId().equals(held.getRef().getTxhash());
+            kotlin.test.AssertionsKt.assertTrue(reissued, "policy re-issued the deep asset");
+        }
+    }
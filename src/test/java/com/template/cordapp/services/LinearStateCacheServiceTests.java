@@ -0,0 +1,74 @@
+package com.template.cordapp.services;
+
+import com.template.cordapp.contract.AssetTransferContract;
+import com.template.cordapp.flows.AbstractAssetJunitFlowTests;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.state.AssetTransfer;
+import com.template.cordapp.state.RequestStatus;
+import kotlin.test.AssertionsKt;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.finance.Currencies;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * [LinearStateCacheService] must only ever hold states whose recording has committed.
+ */
+public final class LinearStateCacheServiceTests extends AbstractAssetJunitFlowTests {
+
+        @Test
+        public final void caches_the_outputs_of_a_committed_transaction/* $FF was: caches the outputs of a committed transaction*/() {
+            StartedMockNode node = this.getLenderOfSecurity();
+            SignedTransaction stx = this.transferRequest(node);
+            node.transaction(() -> {
+                node.getServices().recordTransactions(stx);
+                return null;
+            });
+
+            UniqueIdentifier linearId = stx.getTx().outputsOfType(AssetTransfer.class).get(0).getLinearId();
+            AssertionsKt.assertNotNull(this.cache(node).get(linearId, AssetTransfer.class), "committed output is cached");
+        }
+
+        @Test
+        public final void does_not_cache_the_outputs_of_a_rolled_back_transaction/* $FF was: does not cache the outputs of a rolled back transaction*/() {
+            // A flow that fails after recording a transaction rolls back its database transaction in the same way.
+            StartedMockNode node = this.getLenderOfSecurity();
+            SignedTransaction stx = this.transferRequest(node);
+            try {
+                node.transaction(() -> {
+                    node.getServices().recordTransactions(stx);
+                    throw new IllegalStateException("Flow failed after recording.");
+                });
+                AssertionsKt.fail("Expected the recording to roll back.");
+            } catch (IllegalStateException expected) {
+            }
+
+            UniqueIdentifier linearId = stx.getTx().outputsOfType(AssetTransfer.class).get(0).getLinearId();
+            AssertionsKt.assertNull(this.cache(node).get(linearId, AssetTransfer.class), "rolled back output is not cached");
+            int inVault = node.transaction(() ->
+                    node.getServices().getVaultService().queryBy(AssetTransfer.class).getStates().size());
+            AssertionsKt.assertEquals(0, inVault, "rolled back output is not in the vault");
+        }
+
+        private LinearStateCacheService cache(StartedMockNode node) {
+            return node.getServices().cordaService(LinearStateCacheService.class);
+        }
+
+        /** A signed transfer request naming [node] on both sides, so that its vault tracks the output. */
+        private SignedTransaction transferRequest(StartedMockNode node) {
+            Party me = node.getInfo().getLegalIdentities().get(0);
+            Party notary = node.getServices().getNetworkMapCache().getNotaryIdentities().get(0);
+            Asset asset = new Asset(this.getCusip(), "US BOND", Currencies.DOLLARS(1000), me, me);
+            AssetTransfer assetTransfer = new AssetTransfer(asset, me, me, null, RequestStatus.PENDING_CONFIRMATION,
+                    Collections.singletonList(me), new UniqueIdentifier());
+            TransactionBuilder builder = new TransactionBuilder(notary)
+                    .addOutputState(assetTransfer, AssetTransferContract.ASSET_TRANSFER_CONTRACT_ID)
+                    .addCommand(new AssetTransferContract.Commands.CreateRequest(), me.getOwningKey());
+            return node.getServices().signInitialTransaction(builder);
+        }
+    }
@@ -0,0 +1,110 @@
+package com.template.cordapp.services;
+
+import com.template.cordapp.flows.AbstractAssetJunitFlowTests;
+import kotlin.Pair;
+import kotlin.test.AssertionsKt;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.identity.PartyAndCertificate;
+import net.corda.nodeapi.internal.KeyStoreConfigHelpersKt;
+import net.corda.nodeapi.internal.crypto.CertificateAndKeyPair;
+import net.corda.nodeapi.internal.crypto.CertificateType;
+import net.corda.nodeapi.internal.crypto.X509Utilities;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * [IdentitySyncFlow.Receive] registers counterparty identities through [WellKnownIdentityCacheService], which must
+ * check each path in full against the node's trust root.
+ */
+public final class WellKnownIdentityCacheServiceTests extends AbstractAssetJunitFlowTests {
+
+        private static final CordaX500Name COUNTERPARTY = CordaX500Name.parse("O=Counterparty,L=London,C=GB");
+        private static final Pair<Duration, Duration> DEFAULT_WINDOW = new Pair<>(Duration.ZERO, Duration.ofDays(365));
+        private static final Pair<Duration, Duration> EXPIRED_WINDOW = new Pair<>(Duration.ofDays(30), Duration.ofDays(-1));
+
+        @Test
+        public final void registers_a_confidential_identity_issued_by_a_legal_identity/* $FF was: registers a confidential identity issued by a legal identity*/() {
+            CertificateAndKeyPair intermediate = KeyStoreConfigHelpersKt.getDEV_INTERMEDIATE_CA();
+            CertificateAndKeyPair nodeCa = issue(CertificateType.NODE_CA, intermediate, DEFAULT_WINDOW);
+            CertificateAndKeyPair legal = issue(CertificateType.LEGAL_IDENTITY, nodeCa, DEFAULT_WINDOW);
+            CertificateAndKeyPair confidential = issue(CertificateType.CONFIDENTIAL_LEGAL_IDENTITY, legal, DEFAULT_WINDOW);
+
+            PartyAndCertificate identity = identity(confidential, legal, nodeCa, intermediate);
+            this.getLenderOfCash().transaction(() -> register(identity));
+
+            AssertionsKt.assertEquals(COUNTERPARTY, this.resolve(identity).getName(), "confidential identity resolves to its legal identity");
+        }
+
+        @Test
+        public final void rejects_a_confidential_identity_issued_by_the_wrong_role/* $FF was: rejects a confidential identity issued by the wrong role*/() {
+            // Only a legal identity may issue a confidential identity, not the node CA above it.
+            CertificateAndKeyPair intermediate = KeyStoreConfigHelpersKt.getDEV_INTERMEDIATE_CA();
+            CertificateAndKeyPair nodeCa = issue(CertificateType.NODE_CA, intermediate, DEFAULT_WINDOW);
+            CertificateAndKeyPair confidential = issue(CertificateType.CONFIDENTIAL_LEGAL_IDENTITY, nodeCa, DEFAULT_WINDOW);
+
+            assertRejected(identity(confidential, nodeCa, intermediate));
+        }
+
+        @Test
+        public final void rejects_a_confidential_identity_under_an_expired_intermediate/* $FF was: rejects a confidential identity under an expired intermediate*/() {
+            // Certificates issued under the expired intermediate cannot outlive it, so they are given the same window.
+            CertificateAndKeyPair intermediate = issue(CertificateType.INTERMEDIATE_CA, KeyStoreConfigHelpersKt.getDEV_ROOT_CA(), EXPIRED_WINDOW);
+            CertificateAndKeyPair nodeCa = issue(CertificateType.NODE_CA, intermediate, EXPIRED_WINDOW);
+            CertificateAndKeyPair legal = issue(CertificateType.LEGAL_IDENTITY, nodeCa, EXPIRED_WINDOW);
+            CertificateAndKeyPair confidential = issue(CertificateType.CONFIDENTIAL_LEGAL_IDENTITY, legal, EXPIRED_WINDOW);
+
+            assertRejected(identity(confidential, legal, nodeCa, intermediate));
+        }
+
+        private void assertRejected(PartyAndCertificate identity) {
+            try {
+                this.getLenderOfCash().transaction(() -> register(identity));
+                AssertionsKt.fail("Expected the identity to be rejected.");
+            } catch (IllegalArgumentException expected) {
+            }
+            AssertionsKt.assertNull(this.resolve(identity), "rejected identity is not registered");
+        }
+
+        private Object register(PartyAndCertificate identity) {
+            try {
+                this.getLenderOfCash().getServices().cordaService(WellKnownIdentityCacheService.class).verifyAndRegisterIdentity(identity);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return null;
+        }
+
+        private Party resolve(PartyAndCertificate identity) {
+            return this.getLenderOfCash().transaction(() -> this.getLenderOfCash().getServices()
+                    .cordaService(WellKnownIdentityCacheService.class)
+                    .wellKnownPartyFromAnonymous(new AnonymousParty(identity.getOwningKey())));
+        }
+
+        private static CertificateAndKeyPair issue(CertificateType type, CertificateAndKeyPair issuer, Pair<Duration, Duration> window) {
+            KeyPair keyPair = Crypto.generateKeyPair(Crypto.ECDSA_SECP256R1_SHA256);
+            X509Certificate certificate = X509Utilities.createCertificate(type, issuer.getCertificate(), issuer.getKeyPair(),
+                    COUNTERPARTY.getX500Principal(), keyPair.getPublic(), window, null);
+            return new CertificateAndKeyPair(certificate, keyPair);
+        }
+
+        private static PartyAndCertificate identity(CertificateAndKeyPair... chain) {
+            try {
+                X509Certificate[] certificates = new X509Certificate[chain.length];
+                for (int i = 0; i < chain.length; i++) {
+                    certificates[i] = chain[i].getCertificate();
+                }
+                return new PartyAndCertificate(CertificateFactory.getInstance("X.509").generateCertPath(Arrays.asList(certificates)));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
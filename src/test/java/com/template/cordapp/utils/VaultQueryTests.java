@@ -0,0 +1,79 @@
+package com.template.cordapp.utils;
+
+import com.template.cordapp.flows.AbstractAssetJunitFlowTests;
+import com.template.cordapp.state.Asset;
+import com.template.cordapp.state.AssetTransfer;
+import kotlin.test.AssertionsKt;
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.finance.Currencies;
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+
+import static com.template.cordapp.state.RequestStatus.PENDING;
+
+/**
+ * Queries answered from [AssetSchemaV2] and [AssetTransferSchemaV2] rather than the V1 tables.
+ */
+public final class VaultQueryTests extends AbstractAssetJunitFlowTests {
+
+        private static final Currency USD = Currency.getInstance("USD");
+        private static final Currency GBP = Currency.getInstance("GBP");
+
+        private void createPortfolio() {
+            this.createAsset(this.getLenderOfSecurity(), "CUSIP1", "US BOND 1", Currencies.DOLLARS(500));
+            this.createAsset(this.getLenderOfSecurity(), "CUSIP2", "US BOND 2", Currencies.DOLLARS(1000));
+            this.createAsset(this.getLenderOfSecurity(), "CUSIP3", "US BOND 3", Currencies.DOLLARS(2000));
+            this.createAsset(this.getLenderOfSecurity(), "CUSIP4", "UK GILT 4", Currencies.POUNDS(1000));
+            this.getNetwork().waitQuiescent();
+        }
+
+        @Test
+        public final void purchase_cost_range_is_filtered_and_sorted_by_value/* $FF was: purchase cost range is filtered and sorted by value*/() {
+            this.createPortfolio();
+
+            // Bounds are in cents: 800 to 2500 dollars.
+            Vault.Page<Asset> page = this.getLenderOfSecurity().transaction(() ->
+                    UtilsKt.getAssetsByPurchaseCost(this.getLenderOfSecurity().getServices(), USD, 80_000L, 250_000L, new PageSpecification(1, 10)));
+
+            List<StateAndRef<Asset>> states = page.getStates();
+            AssertionsKt.assertEquals(2, states.size(), "only dollar assets inside the range");
+            AssertionsKt.assertEquals("CUSIP3", states.get(0).getState().getData().getCusip(), "most valuable first");
+            AssertionsKt.assertEquals("CUSIP2", states.get(1).getState().getData().getCusip(), "expected equals actual");
+        }
+
+        @Test
+        public final void portfolio_value_is_summed_per_currency/* $FF was: portfolio value is summed per currency*/() {
+            this.createPortfolio();
+
+            Map<Currency, Amount<Currency>> totals = this.getLenderOfSecurity().transaction(() ->
+                    UtilsKt.getPortfolioValue(this.getLenderOfSecurity().getServices()));
+
+            AssertionsKt.assertEquals(2, totals.size(), "one total per currency");
+            AssertionsKt.assertEquals(Currencies.DOLLARS(3500), totals.get(USD), "expected equals actual");
+            AssertionsKt.assertEquals(Currencies.POUNDS(1000), totals.get(GBP), "expected equals actual");
+        }
+
+        @Test
+        public final void pending_transfers_are_found_by_clearing_house/* $FF was: pending transfers are found by clearing house*/() {
+            this.createAsset();
+            SignedTransaction request = this.createAssetTransferRequest(this.getLenderOfSecurity(), this.getLenderOfCashParty(), this.getCusip());
+            this.getNetwork().waitQuiescent();
+            UniqueIdentifier linearId = request.getTx().outputsOfType(AssetTransfer.class).get(0).getLinearId();
+            this.confirmAssetTransferRequest(this.getLenderOfCash(), this.getCustodianParty(), linearId);
+            this.getNetwork().waitQuiescent();
+
+            Vault.Page<AssetTransfer> page = this.getGlobalCustodian().transaction(() ->
+                    UtilsKt.getTransfersForClearingHouse(this.getGlobalCustodian().getServices(), PENDING, this.getCustodianParty()));
+
+            AssertionsKt.assertEquals(1, page.getStates().size(), "the confirmed request is pending at the clearing house");
+            AssertionsKt.assertEquals(linearId, page.getStates().get(0).getState().getData().getLinearId(), "expected equals actual");
+        }
+    }